@@ -0,0 +1,205 @@
+package neat;
+
+import network.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.random.RandomGenerator;
+
+/**
+ * A flat encoding of a Network used for crossover. The Nodes are held in a table sorted
+ * by ID, and the genes, one per Connection, in parallel arrays sorted by innovation
+ * number, with their end Nodes given as indices into the node table.
+ * A Genome is not modified once constructed, except for the weights of a Genome fresh
+ * from {@link #crossover(Genome, Genome, RandomGenerator)}; Genomes may share arrays.
+ */
+final class Genome {
+	// node table, sorted by ID
+	final long[] nodeIds;
+	final NodeType[] nodeTypes;
+	/** Activation functions of hidden and output Nodes, null for other Nodes. */
+	final DoubleUnaryOperator[] activationFunctions;
+	/** Values of bias Nodes, 0 for other Nodes. */
+	final double[] biasValues;
+
+	/** Indices of the input and output Nodes, in the order of the Network. */
+	final int[] inputs, outputs;
+
+	// genes, sorted by innovation number
+	final long[] innovations;
+	final double[] weights;
+	/** Indices of the end Nodes of each gene. */
+	final int[] from, to;
+
+	private Genome(final long[] nodeIds, final NodeType[] nodeTypes,
+	               final DoubleUnaryOperator[] activationFunctions, final double[] biasValues,
+	               final int[] inputs, final int[] outputs,
+	               final long[] innovations, final double[] weights,
+	               final int[] from, final int[] to) {
+		this.nodeIds = nodeIds;
+		this.nodeTypes = nodeTypes;
+		this.activationFunctions = activationFunctions;
+		this.biasValues = biasValues;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.innovations = innovations;
+		this.weights = weights;
+		this.from = from;
+		this.to = to;
+	}
+
+	/** Constructs a Genome sharing everything but the weights with the specified one. */
+	private Genome(final Genome topology, final double[] weights) {
+		this(topology.nodeIds, topology.nodeTypes,
+				topology.activationFunctions, topology.biasValues,
+				topology.inputs, topology.outputs,
+				topology.innovations, weights,
+				topology.from, topology.to);
+	}
+
+
+	/** Encodes the specified Network. */
+	static Genome of(final Network network) {
+		final List<InputNode> inputNodes = network.getInputs();
+		final List<OutputNode> outputNodes = network.getOutputs();
+		final int numNodes =
+				inputNodes.size() + outputNodes.size() + network.getHiddens().size();
+
+		// sort the IDs first, then place every Node at the position of its ID
+		final long[] nodeIds = new long[numNodes];
+		int n = 0;
+		for (final Node<?> node : inputNodes) nodeIds[n++] = node.getId();
+		for (final Node<?> node : outputNodes) nodeIds[n++] = node.getId();
+		for (final Node<?> node : network.getHiddens()) nodeIds[n++] = node.getId();
+		Arrays.sort(nodeIds);
+
+		final NodeType[] nodeTypes = new NodeType[numNodes];
+		final DoubleUnaryOperator[] activationFunctions = new DoubleUnaryOperator[numNodes];
+		final double[] biasValues = new double[numNodes];
+
+		final int[] inputs = new int[inputNodes.size()];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = indexOf(nodeIds, inputNodes.get(i));
+			nodeTypes[inputs[i]] = NodeType.INPUT;
+		}
+
+		final int[] outputs = new int[outputNodes.size()];
+		for (int i = 0; i < outputs.length; i++) {
+			final OutputNode node = outputNodes.get(i);
+			outputs[i] = indexOf(nodeIds, node);
+			nodeTypes[outputs[i]] = NodeType.OUTPUT;
+			activationFunctions[outputs[i]] = node.getActivationFunction();
+		}
+
+		for (final Node<?> node : network.getHiddens()) {
+			final int index = indexOf(nodeIds, node);
+			if (node instanceof Bias) {
+				nodeTypes[index] = NodeType.BIAS;
+				biasValues[index] = ((Bias) node).getValue();
+			}
+			else {
+				nodeTypes[index] = NodeType.HIDDEN;
+				activationFunctions[index] = ((HiddenNode) node).getActivationFunction();
+			}
+		}
+
+		// the connections are kept in the order of innovation numbers
+		final int numGenes = network.getConnections().size();
+		final long[] innovations = new long[numGenes];
+		final double[] weights = new double[numGenes];
+		final int[] from = new int[numGenes], to = new int[numGenes];
+		int g = 0;
+		for (final Connection connection : network.getConnections()) {
+			innovations[g] = connection.getInnovationNumber();
+			weights[g] = connection.getWeight();
+			from[g] = indexOf(nodeIds, connection.getPrevNode());
+			to[g] = indexOf(nodeIds, connection.getNextNode());
+			g++;
+		}
+
+		return new Genome(nodeIds, nodeTypes, activationFunctions, biasValues,
+				inputs, outputs, innovations, weights, from, to);
+	}
+
+	private static int indexOf(final long[] nodeIds, final Node<?> node) {
+		final int index = Arrays.binarySearch(nodeIds, node.getId());
+		if (index < 0)
+			throw new IllegalArgumentException("Connection to a Node outside the Network: " + node);
+		return index;
+	}
+
+
+	/**
+	 * Builds a new Network from this Genome. The Nodes and Connections keep their IDs and
+	 * innovation numbers.
+	 */
+	Network toNetwork() {
+		final Node<?>[] nodes = new Node<?>[nodeIds.length];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = new NodeBuilder(nodeTypes[i])
+					           .setId(nodeIds[i])
+					           .setActivationFunction(activationFunctions[i])
+					           .setValue(biasValues[i])
+					           .build();
+		}
+
+		final List<InputNode> inputNodes = new ArrayList<>(inputs.length);
+		for (final int i : inputs)
+			inputNodes.add((InputNode) nodes[i]);
+		final List<OutputNode> outputNodes = new ArrayList<>(outputs.length);
+		for (final int i : outputs)
+			outputNodes.add((OutputNode) nodes[i]);
+
+		final Network network = new Network(inputNodes, outputNodes);
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodeTypes[i] == NodeType.HIDDEN || nodeTypes[i] == NodeType.BIAS)
+				network.putNode(nodes[i]);
+		}
+
+		for (int g = 0; g < innovations.length; g++)
+			network.attachConnection(innovations[g], weights[g], nodes[from[g]], nodes[to[g]]);
+
+		return network;
+	}
+
+
+	/**
+	 * Crosses the specified Genomes. The child has the structure of the fitter parent,
+	 * including its disjoint and excess genes; the weight of each gene the parents have
+	 * in common is taken from either parent with equal probability. The genes are matched
+	 * in a single merge pass over both innovation arrays, and the only allocation is the
+	 * weight array of the child.
+	 * Taking the structure from one parent only guarantees the child is free of cycles,
+	 * which the union of two structures is not.
+	 */
+	static Genome crossover(final Genome fitter, final Genome other, final RandomGenerator random) {
+		final double[] weights = fitter.weights.clone();
+
+		final long[] innovations = fitter.innovations, otherInnovations = other.innovations;
+		int j = 0;
+		for (int i = 0; i < innovations.length && j < otherInnovations.length; i++) {
+			// skip the disjoint genes of the other parent
+			while (j < otherInnovations.length && otherInnovations[j] < innovations[i])
+				j++;
+
+			if (j < otherInnovations.length && otherInnovations[j] == innovations[i]) {
+				if (random.nextBoolean())
+					weights[i] = other.weights[j];
+				j++;
+			}
+		}
+
+		return new Genome(fitter, weights);
+	}
+
+	/** Copies this Genome with a fresh weight array, to be mutated. */
+	Genome copyWeights() {
+		return new Genome(this, weights.clone());
+	}
+
+
+	/** The number of genes. */
+	int size() { return innovations.length; }
+}
@@ -1,95 +1,316 @@
 package neat;
 
-import network.Connection;
+import network.*;
 import service.Evolver;
-import network.Network;
+import service.PopulationScores;
+import util.ConfigLoader;
+import util.RandomSource;
+import util.Selection;
+import util.WorkerPool;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * NeuroEvolution of Augmenting Topologies. Every Network of the initial population is a
+ * copy of one template with random weights, so Node IDs and innovation numbers line up
+ * between Networks and genes can be matched in crossovers.
+ * Every generation is divided into species of structurally similar Networks which share
+ * their fitness, see {@link Speciation}. Offspring are produced by crossing two survivors
+ * of the same species or copying one, followed by weight and structural mutations.
+ */
 public final class Neat implements Evolver {
+	/** Chance of producing an offspring by crossover rather than by copying one parent. */
+	private static final double CROSSOVER_RATE = 0.75;
+	/** Chance of the weights of an offspring being mutated. */
+	private static final double WEIGHT_MUTATION_RATE = 0.8;
+	/** Chance of a mutated weight being replaced rather than perturbed. */
+	private static final double WEIGHT_REPLACE_RATE = 0.1;
+	/** Largest change of a perturbed weight. */
+	private static final double WEIGHT_PERTURBATION = 0.5;
+	/** Chance of an offspring gaining a Connection. */
+	private static final double ADD_CONNECTION_RATE = 0.05;
+	/** Chance of an offspring gaining a Node. */
+	private static final double ADD_NODE_RATE = 0.03;
+	/** Attempts at finding a pair of Nodes that can be connected without a cycle. */
+	private static final int ADD_CONNECTION_ATTEMPTS = 20;
 
+	/** Name of the configuration property specifying the desired number of species. */
+	public static final String TARGET_SPECIES_PROPERTY = "target_species";
+	private static final int DEFAULT_TARGET_SPECIES = 10;
+	/** Name of the configuration property specifying the initial compatibility threshold. */
+	public static final String COMPATIBILITY_THRESHOLD_PROPERTY = "compatibility_threshold";
+	private static final double DEFAULT_COMPATIBILITY_THRESHOLD = 3.0;
+
+	/** Number of offspring bred on one random stream by one worker. */
+	private static final int BREED_CHUNK_SIZE = 32;
+
+	/**
+	 * The master random stream, used on the calling thread only; workers breeding
+	 * offspring get streams split off from it. Created on first use, once the
+	 * configuration holding the seed is loaded.
+	 */
+	private SplittableRandom master;
+
+	/**
+	 * Numbers instances in order of creation, so every instance, such as the Evolver of
+	 * each island, gets its own random stream.
+	 */
+	private static final AtomicLong INSTANCES = new AtomicLong();
+	private final long instance = INSTANCES.getAndIncrement();
+
+	/** Created on first use, once the configuration is loaded. */
+	private Speciation speciation;
+
+
+	/**
+	 * Constructs a Neat Evolver.
+	 */
+	public Neat() {}	// ServiceLoader uses this
+
+
+	/**
+	 * Provides a Collection of copies of one Network connecting every input node to every
+	 * output node, each with random weights.
+	 */
 	@Override
 	public Collection<Network> initPopulation(int populationSize, int numInputs, int numOutputs) {
-		// TODO implement this
-		return null;
+		final SplittableRandom random = master();
+		final Genome template = Genome.of(initNetwork(numInputs, numOutputs));
+
+		final List<Network> population = new ArrayList<>(populationSize);
+		for (int i = 0; i < populationSize; i++) {
+			final Genome genome = template.copyWeights();
+			for (int g = 0; g < genome.size(); g++)
+				genome.weights[g] = random.nextDouble() - 0.5;
+			population.add(genome.toNetwork());
+		}
+		return population;
 	}
 
+	/**
+	 * Creates a Network with a Connection from every input node to every output node,
+	 * with random weights. The resulting network has no hidden nodes.
+	 */
 	@Override
 	public Network initNetwork(int numInputs, int numOutputs) {
-		// TODO implement this
-		return null;
+		final SplittableRandom random = master();
+		final Network network = new Network(numInputs, numOutputs, Math::tanh);
+
+		for (Node<?> input : network.getInputs()) {
+			for (Node<?> output : network.getOutputs())
+				network.connect(input, output, random.nextDouble() - 0.5);
+		}
+
+		return network;
 	}
 
+
+	/**
+	 * Removes the bottom portion of the population as specified by harshness, then fills
+	 * the next generation with offspring of the survivors. The survivors are carried over.
+	 * @param harshness ratio of number of networks to be eliminated
+	 */
 	@Override
 	public Collection<Network> nextGeneration(
-			Map<? extends Network, ? extends Double> prevGenToFitness,
+			PopulationScores prevGenScores,
 			int nextGenSize,
 			double harshness) {
-		// TODO implement this
-		return null;
+		if (nextGenSize < 0)
+			throw new IllegalArgumentException("nextGenSize cannot be negative");
+		if (harshness < 0 || harshness > 1)
+			throw new IllegalArgumentException("harshness must be between 0 and 1 inclusive");
+
+		final SplittableRandom random = master();
+
+		// divide the whole population into species, encoding every Network once
+		final int size = prevGenScores.size();
+		final Genome[] population = new Genome[size];
+		final long[] hashes = new long[size];
+		final double[] fitness = new double[size];
+		WorkerPool.forEachIndex(size, i -> {
+			final Network network = prevGenScores.getNetwork(i);
+			population[i] = Genome.of(network);
+			hashes[i] = network.structuralHash();
+			fitness[i] = prevGenScores.getFitness(i);
+		});
+		final int[] species = speciation().speciate(population, hashes, random);
+		final double[] sharedFitness = Speciation.shareFitness(fitness, species);
+
+		// eliminate
+		final int numSurvivors = (int) Math.round(size * (1 - harshness));
+		final int[] survivorIndices = prevGenScores.topK(numSurvivors, random);
+		final List<Network> survivors = new ArrayList<>(survivorIndices.length);
+		final Genome[] genomes = new Genome[survivorIndices.length];
+		final double[] survivorFitness = new double[survivorIndices.length];
+		final double[] survivorSharedFitness = new double[survivorIndices.length];
+		for (int i = 0; i < survivorIndices.length; i++) {
+			final int index = survivorIndices[i];
+			survivors.add(prevGenScores.getNetwork(index));
+			genomes[i] = population[index];
+			survivorFitness[i] = fitness[index];
+			survivorSharedFitness[i] = sharedFitness[index];
+		}
+
+		// surviving members of each species, as candidate mates
+		final int[] survivorSpecies = new int[survivorIndices.length];
+		final int[] speciesSizes = new int[speciation().getNumSpecies()];
+		for (int i = 0; i < survivorIndices.length; i++) {
+			survivorSpecies[i] = species[survivorIndices[i]];
+			speciesSizes[survivorSpecies[i]]++;
+		}
+		final int[][] mates = new int[speciesSizes.length][];
+		for (int s = 0; s < mates.length; s++)
+			mates[s] = new int[speciesSizes[s]];
+		final int[] filled = new int[speciesSizes.length];
+		for (int i = 0; i < survivorIndices.length; i++)
+			mates[survivorSpecies[i]][filled[survivorSpecies[i]]++] = i;
+
+		// choose a parent for each offspring by shared fitness, so large species do not
+		// crowd out the others; its mate is picked from the same species
+		final int numOffspring = Math.max(0, nextGenSize - survivors.size());
+		final int[] parents = Selection.choose(
+				Selection.getConfiguredScheme(), survivorSharedFitness, numOffspring, random);
+
+
+		// breed in parallel, in chunks with their own random streams split off in order,
+		// so the result does not depend on the number of threads
+		final Network[] offspring = new Network[numOffspring];
+		final int numChunks = (numOffspring + BREED_CHUNK_SIZE - 1) / BREED_CHUNK_SIZE;
+		final SplittableRandom[] streams = new SplittableRandom[numChunks];
+		for (int chunk = 0; chunk < numChunks; chunk++)
+			streams[chunk] = random.split();
+
+		WorkerPool.forEachIndex(numChunks, chunk -> {
+			final SplittableRandom rng = streams[chunk];
+			final int end = Math.min(numOffspring, (chunk + 1) * BREED_CHUNK_SIZE);
+			for (int i = chunk * BREED_CHUNK_SIZE; i < end; i++) {
+				final int[] candidates = mates[survivorSpecies[parents[i]]];
+				final int mate = candidates[rng.nextInt(candidates.length)];
+				offspring[i] = breed(genomes, survivorFitness, parents[i], mate, rng);
+			}
+		});
+
+
+		final List<Network> nextGen = new ArrayList<>(survivors.size() + offspring.length);
+		nextGen.addAll(survivors);
+		nextGen.addAll(Arrays.asList(offspring));
+		return nextGen;
 	}
 
+	private Speciation speciation() {
+		if (speciation == null) {
+			final Properties config = ConfigLoader.getConfig();
+			final int targetSpecies = (config == null) ?
+					DEFAULT_TARGET_SPECIES :
+					Integer.parseInt(config.getProperty(
+							TARGET_SPECIES_PROPERTY, String.valueOf(DEFAULT_TARGET_SPECIES)));
+			final double threshold = (config == null) ?
+					DEFAULT_COMPATIBILITY_THRESHOLD :
+					Double.parseDouble(config.getProperty(
+							COMPATIBILITY_THRESHOLD_PROPERTY,
+							String.valueOf(DEFAULT_COMPATIBILITY_THRESHOLD)));
+			speciation = new Speciation(targetSpecies, threshold);
+		}
+		return speciation;
+	}
+
+	private SplittableRandom master() {
+		if (master == null)
+			master = RandomSource.stream(getClass().getName(), instance);
+		return master;
+	}
 
 
 	/**
-	 * Performs a crossover using the specified Networks and returns the offspring.
+	 * Produces a mutated offspring of the specified parents, the parent passing on its
+	 * structure in a crossover. Speciation only applies to whole generations.
 	 */
-	public Network reproduce(Network parent1, Network parent2) {	// more than 2 parents?
-
-//		final Network child = new Network();
-		// TODO implement this
-		final Network child = null;
-
-//		final Network fittest;
-//		// if of equal fitness, choose a random one
-//		if (this.getFitness() == other.getFitness())
-//			fittest = randomBoolean() ? this : other;
-//		else
-//			fittest = this.getFitness() > other.getFitness() ? this : other;
-
-		final Map<Long, Connection> connects1 = parent1.getInnovNumToConnections();
-		final Map<Long, Connection> connects2 = parent2.getInnovNumToConnections();
-
-
-		final List<Long> innovNums1 = new ArrayList<>(connects1.keySet());
-		final List<Long> innovNums2 = new ArrayList<>(connects2.keySet());
-
-		int i1 = 0, i2 = 0;
-		for ( ; i1 < innovNums1.size() && i2 < innovNums2.size(); ) {
-			final long innovNum1 = innovNums1.get(i1);
-			final long innovNum2 = innovNums2.get(i2);
-
-			// add matching genes randomly
-			if (innovNum1 == innovNum2) {
-				child.putConnection(
-						(Math.random() > 0.5) ?
-								connects1.get(innovNum1) :
-								connects2.get(innovNum2)
-				);
-				i1++; i2++;
-			}
-			else {	// add all disjoint genes
-				final Connection c;
-				if (innovNum1 < innovNum2) {
-					c = connects1.get(innovNum1); i1++;
-				}
-				else {
-					c = connects2.get(innovNum2); i2++;
-				}
-
-				child.putConnection(c);
-			}
+	@Override
+	public Network breed(final Network parent, final Network mate, final SplittableRandom random) {
+		final Genome[] genomes = { Genome.of(parent), Genome.of(mate) };
+		// fitness only decides which parent passes on its structure
+		return breed(genomes, new double[] { 1, 0 }, 0, (parent == mate) ? 0 : 1, random);
+	}
+
+	/**
+	 * Produces a mutated offspring of the specified parents. Only reads the Genomes, so
+	 * the same parents may be bred on several threads at once.
+	 */
+	private static Network breed(final Genome[] genomes, final double[] fitness,
+	                             final int parent1, final int parent2,
+	                             final SplittableRandom rng) {
+		final Genome child;
+		if (parent1 != parent2 && rng.nextDouble() < CROSSOVER_RATE) {
+			// the fitter parent passes on its structure, a random one if equally fit
+			final boolean firstFitter = fitness[parent1] > fitness[parent2] ||
+					(fitness[parent1] == fitness[parent2] && rng.nextBoolean());
+			child = firstFitter ?
+					Genome.crossover(genomes[parent1], genomes[parent2], rng) :
+					Genome.crossover(genomes[parent2], genomes[parent1], rng);
+		}
+		else {
+			child = genomes[parent1].copyWeights();
+		}
+
+		if (rng.nextDouble() < WEIGHT_MUTATION_RATE)
+			mutateWeights(child, rng);
+
+		final Network network = child.toNetwork();
+		if (rng.nextDouble() < ADD_CONNECTION_RATE)
+			randomlyAddConnection(network, rng);
+		if (rng.nextDouble() < ADD_NODE_RATE)
+			randomlyAddNode(network, rng);
+		return network;
+	}
+
+
+	/**
+	 * Perturbs every weight of the specified Genome, or occasionally replaces it with a
+	 * new random weight.
+	 */
+	private static void mutateWeights(final Genome genome, final SplittableRandom rng) {
+		final double[] weights = genome.weights;
+		for (int g = 0; g < weights.length; g++) {
+			if (rng.nextDouble() < WEIGHT_REPLACE_RATE)
+				weights[g] = rng.nextDouble() * 2 - 1;
+			else
+				weights[g] += (rng.nextDouble() * 2 - 1) * WEIGHT_PERTURBATION;
 		}
+	}
+
+	/**
+	 * Adds a Connection between two random Nodes of the specified Network, as long as it
+	 * does not introduce a cycle or duplicate an existing Connection.
+	 */
+	private static void randomlyAddConnection(final Network network, final SplittableRandom rng) {
+		final List<Node<?>> froms = new ArrayList<>(network.getInputs());
+		froms.addAll(network.getHiddens());
+
+		final List<Node<?>> tos = new ArrayList<>(network.getOutputs());
+		for (final Node<?> node : network.getHiddens()) {
+			if (!(node instanceof ExitOnlyNode))
+				tos.add(node);
+		}
+
+		for (int attempt = 0; attempt < ADD_CONNECTION_ATTEMPTS; attempt++) {
+			final Node<?> from = froms.get(rng.nextInt(froms.size()));
+			final Node<?> to = tos.get(rng.nextInt(tos.size()));
+			if (from != to && network.tryConnect(from, to, rng.nextDouble() * 2 - 1))
+				return;
+		}
+	}
+
+	/** Splits a random Connection of the specified Network with a new Node. */
+	private static void randomlyAddNode(final Network network, final SplittableRandom rng) {
+		final var connections = network.getConnections();
+		if (connections.isEmpty())
+			return;
 
-		// add all excess genes
-		for ( ; i1 < innovNums1.size(); i1++)
-			child.putConnection(connects1.get(innovNums1.get(i1)));
-		for ( ; i2 < innovNums2.size(); i2++)
-			child.putConnection(connects2.get(innovNums2.get(i2)));
+		// does not support indexed access, iterate to the target
+		final var it = connections.iterator();
+		for (int i = rng.nextInt(connections.size()); i > 0; i--) it.next();
 
-		return child;
+		network.addNode(it.next());
 	}
 }
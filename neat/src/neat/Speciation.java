@@ -0,0 +1,245 @@
+package neat;
+
+import util.WorkerPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+
+/**
+ * Divides a population into species of structurally similar Genomes, so new structures
+ * compete mostly among themselves until their weights are tuned.
+ * Two Genomes belong to the same species if their compatibility distance
+ * <pre>
+ * c1 * excess / n + c2 * disjoint / n + c3 * average weight difference of matching genes
+ * </pre>
+ * is below the threshold, where n is the number of genes of the larger Genome, or 1 if
+ * both are small. Every Genome joins the first species whose representative, a random
+ * member of the previous generation, it is compatible with. The threshold is adjusted
+ * every generation to move the number of species towards the target.
+ * Instances are not thread safe, though speciation itself runs on the WorkerPool.
+ */
+final class Speciation {
+	private static final double EXCESS_COEFFICIENT = 1.0;
+	private static final double DISJOINT_COEFFICIENT = 1.0;
+	private static final double WEIGHT_COEFFICIENT = 0.4;
+	/** Genomes with fewer genes than this are not normalized by their size. */
+	private static final int NORMALIZE_THRESHOLD = 20;
+
+	/** Change of the threshold per generation while the species count is off target. */
+	private static final double THRESHOLD_STEP = 0.3;
+
+	/** Number of cached distances above which the cache is cleared. */
+	private static final int DISTANCE_CACHE_SIZE = 1 << 16;
+
+	private final int targetSpecies;
+	private double threshold;
+
+	/** Representatives of the species of the previous generation, with their hashes. */
+	private List<Genome> representatives = new ArrayList<>();
+	private long[] representativeHashes = new long[0];
+
+	/**
+	 * Distances by the structural hashes of both Genomes. A negative entry is the negated
+	 * lower bound of a distance whose computation stopped once it was known to exceed the
+	 * threshold.
+	 */
+	private final Map<Long, Double> distanceCache = new ConcurrentHashMap<>();
+
+
+	/**
+	 * @param targetSpecies the number of species the threshold is adjusted towards
+	 * @param threshold     the initial compatibility threshold
+	 */
+	Speciation(final int targetSpecies, final double threshold) {
+		if (targetSpecies < 1)
+			throw new IllegalArgumentException("targetSpecies must be positive");
+		this.targetSpecies = targetSpecies;
+		this.threshold = threshold;
+	}
+
+
+	/**
+	 * Assigns every Genome to a species.
+	 * @param hashes    the structural hashes of the Networks the Genomes encode, used to
+	 *                  look up cached distances
+	 * @return  the species of each Genome, numbered from 0 without gaps
+	 */
+	int[] speciate(final Genome[] genomes, final long[] hashes, final RandomGenerator random) {
+		final int numExisting = representatives.size();
+
+		// compare against the existing representatives in parallel
+		final int[] species = new int[genomes.length];
+		WorkerPool.forEachIndex(genomes.length, i -> {
+			species[i] = -1;
+			for (int s = 0; s < numExisting; s++) {
+				if (isCompatible(genomes[i], hashes[i],
+						representatives.get(s), representativeHashes[s])) {
+					species[i] = s;
+					break;
+				}
+			}
+		});
+
+		// the rest found new species, which have to be compared against in order
+		final List<Genome> founders = new ArrayList<>(representatives);
+		final List<Long> founderHashes = new ArrayList<>();
+		for (final long hash : representativeHashes)
+			founderHashes.add(hash);
+
+		for (int i = 0; i < genomes.length; i++) {
+			if (species[i] >= 0)
+				continue;
+
+			for (int s = numExisting; s < founders.size(); s++) {
+				if (isCompatible(genomes[i], hashes[i], founders.get(s), founderHashes.get(s))) {
+					species[i] = s;
+					break;
+				}
+			}
+			if (species[i] < 0) {
+				species[i] = founders.size();
+				founders.add(genomes[i]);
+				founderHashes.add(hashes[i]);
+			}
+		}
+
+		// drop empty species and pick a random member of each as the next representative
+		final int[] sizes = new int[founders.size()];
+		for (final int s : species)
+			sizes[s]++;
+
+		final int[] renumbered = new int[founders.size()];
+		int count = 0;
+		for (int s = 0; s < founders.size(); s++)
+			renumbered[s] = (sizes[s] > 0) ? count++ : -1;
+
+		final Genome[] nextRepresentatives = new Genome[count];
+		final long[] nextHashes = new long[count];
+		final int[] seen = new int[count];
+		for (int i = 0; i < species.length; i++) {
+			final int s = renumbered[species[i]];
+			species[i] = s;
+
+			// reservoir sampling of one member
+			if (random.nextInt(++seen[s]) == 0) {
+				nextRepresentatives[s] = genomes[i];
+				nextHashes[s] = hashes[i];
+			}
+		}
+		representatives = Arrays.asList(nextRepresentatives);
+		representativeHashes = nextHashes;
+
+		// steer towards the target number of species
+		if (count < targetSpecies)
+			threshold = Math.max(THRESHOLD_STEP, threshold - THRESHOLD_STEP);
+		else if (count > targetSpecies)
+			threshold += THRESHOLD_STEP;
+
+		if (distanceCache.size() > DISTANCE_CACHE_SIZE)
+			distanceCache.clear();
+
+		return species;
+	}
+
+	/** The number of species found by the last call to speciate. */
+	int getNumSpecies() { return representatives.size(); }
+
+	/** The current compatibility threshold. */
+	double getThreshold() { return threshold; }
+
+
+	/**
+	 * Adjusts fitness by sharing it among the members of each species: every fitness
+	 * value, taken relative to the lowest one, is divided by the size of its species.
+	 */
+	static double[] shareFitness(final double[] fitness, final int[] species) {
+		int numSpecies = 0;
+		for (final int s : species)
+			numSpecies = Math.max(numSpecies, s + 1);
+		final int[] sizes = new int[numSpecies];
+		for (final int s : species)
+			sizes[s]++;
+
+		double min = Double.POSITIVE_INFINITY;
+		for (final double f : fitness)
+			min = Math.min(min, f);
+
+		final double[] shared = new double[fitness.length];
+		for (int i = 0; i < fitness.length; i++)
+			shared[i] = (fitness[i] - min) / sizes[species[i]];
+		return shared;
+	}
+
+
+	private boolean isCompatible(final Genome a, final long hashA,
+	                             final Genome b, final long hashB) {
+		final long key = pairKey(hashA, hashB);
+		final Double cached = distanceCache.get(key);
+		if (cached != null) {
+			// an exact distance, or a lower bound that still rules the pair out
+			if (cached >= 0)
+				return cached < threshold;
+			if (-cached >= threshold)
+				return false;
+		}
+
+		final double distance = distance(a, b, threshold);
+		distanceCache.put(key, distance);
+		return distance >= 0 && distance < threshold;
+	}
+
+	/** Combines two hashes into a key independent of their order. */
+	private static long pairKey(final long hashA, final long hashB) {
+		final long low = Math.min(hashA, hashB), high = Math.max(hashA, hashB);
+		long key = low * 0x9E3779B97F4A7C15L + high;
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+
+
+	/**
+	 * Computes the compatibility distance between the specified Genomes in a single
+	 * merge pass over their innovation numbers. The pass stops as soon as the disjoint
+	 * genes alone put the distance at or above the limit.
+	 * @return  the distance, or the negated lower bound of the distance if the pass
+	 * stopped early
+	 */
+	static double distance(final Genome a, final Genome b, final double limit) {
+		final long[] innovationsA = a.innovations, innovationsB = b.innovations;
+		final int sizeA = innovationsA.length, sizeB = innovationsB.length;
+
+		final int largest = Math.max(sizeA, sizeB);
+		final double n = (largest < NORMALIZE_THRESHOLD) ? 1 : largest;
+		final double disjointCost = DISJOINT_COEFFICIENT / n;
+
+		int i = 0, j = 0;
+		int disjoint = 0, matching = 0;
+		double weightDifference = 0;
+		while (i < sizeA && j < sizeB) {
+			final long innovationA = innovationsA[i], innovationB = innovationsB[j];
+			if (innovationA == innovationB) {
+				weightDifference += Math.abs(a.weights[i] - b.weights[j]);
+				matching++;
+				i++; j++;
+			}
+			else {
+				if (innovationA < innovationB) i++;
+				else j++;
+
+				// the other terms only add to this
+				if (++disjoint * disjointCost >= limit)
+					return -(disjoint * disjointCost);
+			}
+		}
+		final int excess = (sizeA - i) + (sizeB - j);
+
+		return EXCESS_COEFFICIENT * excess / n +
+				disjoint * disjointCost +
+				((matching == 0) ? 0 : WEIGHT_COEFFICIENT * weightDifference / matching);
+	}
+}
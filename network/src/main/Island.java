@@ -0,0 +1,156 @@
+package main;
+
+import logging.Logger;
+import network.Network;
+import service.CachingEvaluator;
+import service.EvaluationCollector;
+import service.Evaluator;
+import service.Evolver;
+import service.PopulationScores;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * A population evolving on its own, with its own Evolver and Evaluator. In the island
+ * model several Islands evolve concurrently and exchange their best Networks from time
+ * to time, see {@link Main}.
+ * An Island is used by one thread at a time.
+ */
+final class Island {
+	/** An Evaluator chain along with the cache in it, if any. */
+	static final class Stack {
+		final Evaluator evaluator;
+		final CachingEvaluator cache;
+
+		Stack(final Evaluator evaluator, final CachingEvaluator cache) {
+			this.evaluator = evaluator;
+			this.cache = cache;
+		}
+	}
+
+
+	private final int id;
+	private final Evolver evolver;
+	private final Evaluator evaluator;
+	/** The cache in the Evaluator chain, or null if there is none. */
+	private final CachingEvaluator cache;
+	/**
+	 * Held while evaluating. Islands sharing an Evaluator that is not thread safe share
+	 * the lock, so their evaluations take turns.
+	 */
+	private final Object evaluationLock;
+
+	private final int populationSize;
+	private final double harshness;
+
+	private List<Network> population;
+	private PopulationScores scores;
+	private double survivorCut = Double.NEGATIVE_INFINITY;
+	private int generation = 0;
+	private double bestFitness = Double.NEGATIVE_INFINITY;
+
+
+	/**
+	 * @param id                the number of this Island, or -1 if it is the only one
+	 * @param cache             the cache in the Evaluator chain, or null if there is none
+	 * @param evaluationLock    held while evaluating, shared by Islands sharing an
+	 *                          Evaluator that is not thread safe
+	 */
+	Island(final int id, final Evolver evolver,
+	       final Evaluator evaluator, final CachingEvaluator cache,
+	       final Object evaluationLock,
+	       final int populationSize, final int numInputs, final int numOutputs,
+	       final double harshness) {
+		this.id = id;
+		this.evolver = evolver;
+		this.evaluator = evaluator;
+		this.cache = cache;
+		this.evaluationLock = evaluationLock;
+		this.populationSize = populationSize;
+		this.harshness = harshness;
+
+		// init first generation, to be updated later, must be mutable
+		population = new ArrayList<>(evolver.initPopulation(populationSize, numInputs, numOutputs));
+	}
+
+
+	/**
+	 * Evaluates the current generation and replaces it with the next.
+	 * @return  the best fitness of the evaluated generation
+	 */
+	double step() {
+		// evaluate networks, tracking the best as results stream in
+		final DoubleAccumulator best =
+				new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+		synchronized (evaluationLock) {
+			// survivors are carried over, the next generation has to beat them to survive
+			evaluator.setSurvivorCut(survivorCut);
+			// scores in population order, so the next generation does not depend on
+			// which evaluations finished first
+			scores = EvaluationCollector.collect(
+					evaluator.evaluateAsync(population), population,
+					evaluation -> best.accumulate(evaluation.getFitness())
+			);
+		}
+		bestFitness = best.get();
+
+		generation++;
+		// next generation
+		population = new ArrayList<>(evolver.nextGeneration(scores, populationSize, harshness));
+		survivorCut = findSurvivorCut(scores, harshness);
+
+		return bestFitness;
+	}
+
+
+	/** Copies of the best Networks of the last evaluated generation. */
+	List<Network> emigrants(final int count) {
+		if (scores == null)
+			return List.of();
+
+		final List<Network> emigrants = new ArrayList<>(count);
+		for (final Network network : scores.getTopK(count))
+			emigrants.add(network.copy());
+		return emigrants;
+	}
+
+	/**
+	 * Puts the specified Networks in the current generation in place of the Networks at
+	 * its end, which are the offspring of the last generation for the Evolvers here.
+	 */
+	void immigrate(final List<Network> immigrants) {
+		final int count = Math.min(immigrants.size(), population.size());
+		for (int i = 0; i < count; i++)
+			population.set(population.size() - 1 - i, immigrants.get(i));
+	}
+
+
+	void logProgress() {
+		if (id < 0)
+			Logger.logf("generation: %s; best: %f%n", generation, bestFitness);
+		else
+			Logger.logf("island: %d; generation: %s; best: %f%n", id, generation, bestFitness);
+		if (cache != null)
+			Logger.logf("fitness cache hits: %d; misses: %d%n", cache.getHits(), cache.getMisses());
+	}
+
+
+	int getGeneration() { return generation; }
+	double getBestFitness() { return bestFitness; }
+
+
+	/**
+	 * Finds the fitness of the worst Network to survive selection with the specified
+	 * harshness.
+	 */
+	private static double findSurvivorCut(
+			final PopulationScores scores, final double harshness) {
+		final int numSurvivors = (int) Math.round(scores.size() * (1 - harshness));
+		if (numSurvivors <= 0)
+			return Double.NEGATIVE_INFINITY;
+
+		return scores.fitnessAtRank(numSurvivors - 1);
+	}
+}
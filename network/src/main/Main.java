@@ -2,11 +2,21 @@ package main;
 
 import logging.Logger;
 import network.Network;
+import service.BudgetedEvaluator;
+import service.CachingEvaluator;
+import service.DeduplicatingEvaluator;
 import service.Evaluator;
 import service.Evolver;
+import service.SuccessiveHalvingEvaluator;
 import util.ConfigLoader;
+import util.RandomSource;
+import util.WorkerPool;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public final class Main {
 
@@ -26,7 +36,7 @@ public final class Main {
 		final ServiceLoader<Evaluator> evaluators = ServiceLoader.load(Evaluator.class);
 		final ServiceLoader<Evolver> evolvers = ServiceLoader.load(Evolver.class);
 
-		final Evaluator evaluator = evaluators.findFirst().orElseThrow(() -> {
+		final Evaluator serviceEvaluator = evaluators.findFirst().orElseThrow(() -> {
 			throw new RuntimeException("No Evaluator service found");
 		});
 
@@ -34,12 +44,15 @@ public final class Main {
 			throw new RuntimeException("No Evolver service found");
 		});
 
-		Logger.logln("Evaluator: " + evaluator);
+		Logger.logln("Evaluator: " + serviceEvaluator);
 		Logger.logln("Evolver:   " + evolver);
 
 		ConfigLoader.loadConfig(args[0]);
 		final Properties config = ConfigLoader.getConfig();
 
+		// log the seed up front so the run can be repeated
+		RandomSource.getSeed();
+
 
 		// number of networks in each generation
 		final int populationSize =
@@ -57,35 +70,180 @@ public final class Main {
 				Double.parseDouble(config.getProperty("harshness"));
 		final double minFitness =
 				Double.parseDouble(config.getProperty("min_fitness"));
-
-		Logger.logln("Initializing generation 0");
-		// init first generation, to be updated later, must be mutable
-		Collection<Network> population =
-				evolver.initPopulation(populationSize, numInputs, numOutputs);
+		// number of scores remembered for deterministic evaluators, 0 to disable
+		final int fitnessCacheSize =
+				Integer.parseInt(config.getProperty("fitness_cache_size", "0"));
+
+		// evaluate structurally identical networks only once per generation
+		final boolean deduplicate =
+				Boolean.parseBoolean(config.getProperty("deduplicate", "false"));
+
+		// number of budgets for successive halving evaluation, 1 to always fully evaluate
+		final int halvingRungs =
+				Integer.parseInt(config.getProperty("halving_rungs", "1"));
+		// factor between budgets, also the inverse of the fraction promoted to the next
+		final double halvingEta =
+				Double.parseDouble(config.getProperty("halving_eta", "3"));
+
+		// number of populations evolving concurrently, 1 for a single population
+		final int numIslands =
+				Integer.parseInt(config.getProperty("islands", "1"));
+		// generations between exchanges of the best networks between islands
+		final int migrationInterval =
+				Integer.parseInt(config.getProperty("migration_interval", "10"));
+		// number of networks sent to the next island in each exchange
+		final int numMigrants =
+				Integer.parseInt(config.getProperty("migrants", "2"));
+
+		// replace networks one at a time instead of evolving whole generations
+		final boolean steadyState =
+				Boolean.parseBoolean(config.getProperty("steady_state", "false"));
+		if (steadyState && numIslands > 1)
+			throw new IllegalStateException("steady_state cannot be combined with islands");
+
+		final EvaluatorChain chain = (base) -> {
+			Evaluator evaluator = base;
+			if (halvingRungs > 1) {
+				if (!(base instanceof BudgetedEvaluator))
+					throw new IllegalStateException("Evaluator does not accept a budget: " + base);
+				evaluator = new SuccessiveHalvingEvaluator(
+						(BudgetedEvaluator) base, halvingRungs, halvingEta);
+			}
+			final CachingEvaluator cache = (fitnessCacheSize > 0) ?
+					new CachingEvaluator(evaluator, fitnessCacheSize) : null;
+			if (cache != null)
+				evaluator = cache;
+			if (deduplicate)
+				evaluator = new DeduplicatingEvaluator(evaluator);
+			return new Island.Stack(evaluator, cache);
+		};
+
+		if (steadyState) {
+			Logger.logln("Initializing population");
+			final Island.Stack stack = chain.build(serviceEvaluator);
+			new SteadyState(evolver, stack.evaluator, populationSize, numInputs, numOutputs)
+					.run(minFitness);
+		}
+		else if (numIslands <= 1) {
+			Logger.logln("Initializing generation 0");
+			final Island.Stack stack = chain.build(serviceEvaluator);
+			final Island island = new Island(-1, evolver, stack.evaluator, stack.cache,
+					new Object(), populationSize, numInputs, numOutputs, harshness);
+
+			double bestFitness;
+			do {
+				bestFitness = island.step();
+
+				if (island.getGeneration() % 50 == 0)
+					island.logProgress();
+
+			} while (bestFitness < minFitness);
+//			} while (true);
+
+			island.logProgress();
+		}
+		else {
+			runIslands(numIslands, migrationInterval, numMigrants, minFitness,
+					serviceEvaluator, evaluators, evolver, evolvers, chain,
+					populationSize, numInputs, numOutputs, harshness);
+		}
 
 
-		double bestFitness;
-		int generationCount = 0;
-		do {
-//			Logger.logln("Evaluating generation " + generationCount);
-			// evaluate networks
-			final Map<Network, Double> evaluatedNetworks = evaluator.evaluate(population);
-			bestFitness = evaluatedNetworks.values().iterator().next(); // first element
-
-			generationCount++;
-//			Logger.logln("Initializing generation " + generationCount);
-			// next generation
-			population = evolver.nextGeneration(evaluatedNetworks, populationSize, harshness);
+		// TODO write champ to file (implement NetworkIO)
+	}
 
-			if (generationCount % 50 == 0)
-				Logger.logf("generation: %s; best: %f%n", generationCount, bestFitness);
 
-		} while (bestFitness < minFitness);
-//		} while (true);
+	/** Wraps the Evaluator provided as a service as configured. */
+	@FunctionalInterface
+	private interface EvaluatorChain {
+		Island.Stack build(Evaluator base);
+	}
 
-		Logger.logf("generation: %s; best: %f%n", generationCount, bestFitness);
 
+	/**
+	 * Runs the island model: the specified number of populations evolve concurrently,
+	 * each in its own ForkJoinPool with an equal share of the configured parallelism, so
+	 * the parallel work of an Island's Evolver and Evaluator stays in its pool. Every
+	 * migrationInterval generations, each Island puts copies of its best Networks in its
+	 * slot of a ring of exchange slots, and takes whatever the Island before it has left
+	 * in its slot. All Islands stop once one of them reaches minFitness.
+	 * Each Island gets its own Evolver and Evaluator instances. An Evaluator that is not
+	 * thread safe is shared instead, with the Islands taking turns evaluating.
+	 */
+	private static void runIslands(
+			final int numIslands, final int migrationInterval, final int numMigrants,
+			final double minFitness,
+			final Evaluator serviceEvaluator, final ServiceLoader<Evaluator> evaluators,
+			final Evolver serviceEvolver, final ServiceLoader<Evolver> evolvers,
+			final EvaluatorChain chain,
+			final int populationSize, final int numInputs, final int numOutputs,
+			final double harshness) {
+		final boolean shareEvaluator = !serviceEvaluator.isThreadSafe();
+		final Object sharedLock = new Object();
+		final int parallelism = Math.max(1, WorkerPool.getParallelism() / numIslands);
+
+		Logger.logf("islands: %d; threads per island: %d%n", numIslands, parallelism);
+
+		final Island[] islands = new Island[numIslands];
+		final ForkJoinPool[] pools = new ForkJoinPool[numIslands];
+		for (int i = 0; i < numIslands; i++) {
+			final Evaluator evaluator = (i == 0 || shareEvaluator) ?
+					serviceEvaluator : newInstance(evaluators);
+			final Evolver evolver = (i == 0) ? serviceEvolver : newInstance(evolvers);
+
+			final Island.Stack stack = chain.build(evaluator);
+			islands[i] = new Island(i, evolver, stack.evaluator, stack.cache,
+					shareEvaluator ? sharedLock : new Object(),
+					populationSize, numInputs, numOutputs, harshness);
+			pools[i] = new ForkJoinPool(parallelism);
+		}
+
+		// slot i holds the latest emigrants of Island i until Island i+1 takes them
+		final AtomicReferenceArray<List<Network>> exchange =
+				new AtomicReferenceArray<>(numIslands);
+		final AtomicBoolean solved = new AtomicBoolean(false);
+
+		final List<ForkJoinTask<?>> tasks = new ArrayList<>(numIslands);
+		for (int i = 0; i < numIslands; i++) {
+			final int id = i;
+			final Island island = islands[i];
+			tasks.add(pools[i].submit(() -> {
+				while (!solved.get()) {
+					if (island.step() >= minFitness)
+						solved.set(true);
+
+					final int generation = island.getGeneration();
+					if (generation % migrationInterval == 0) {
+						exchange.set(id, island.emigrants(numMigrants));
+						final List<Network> immigrants =
+								exchange.getAndSet((id + numIslands - 1) % numIslands, null);
+						if (immigrants != null)
+							island.immigrate(immigrants);
+					}
+
+					if (generation % 50 == 0)
+						island.logProgress();
+				}
+			}));
+		}
+
+		try {
+			for (final ForkJoinTask<?> task : tasks)
+				task.join();
+		}
+		finally {
+			for (final ForkJoinPool pool : pools)
+				pool.shutdown();
+		}
+
+		for (final Island island : islands)
+			island.logProgress();
+	}
 
-		// TODO write champ to file (implement NetworkIO)
+	private static <S> S newInstance(final ServiceLoader<S> loader) {
+		return loader.stream()
+				       .findFirst()
+				       .orElseThrow(() -> new RuntimeException("No service found"))
+				       .get();
 	}
 }
@@ -0,0 +1,178 @@
+package main;
+
+import logging.Logger;
+import network.Network;
+import service.Evaluation;
+import service.Evaluator;
+import service.Evolver;
+import service.PopulationScores;
+import util.RandomSource;
+import util.WorkerPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Steady-state evolution: instead of evaluating whole generations, workers continuously
+ * pick parents by tournament from a shared population, breed and evaluate a single
+ * offspring, and let it replace the weakest of a few randomly sampled members if it is
+ * fitter. No worker ever waits for another to finish an evaluation, so a slow evaluation
+ * only holds up the worker doing it.
+ * The population is an array of Evaluations updated by compare-and-set; a replacement
+ * fails and is retried if another worker replaced the same member in the meantime.
+ */
+final class SteadyState {
+	/** Number of members competing to become a parent. */
+	private static final int TOURNAMENT_SIZE = 3;
+	/** Number of members sampled to find one to replace. */
+	private static final int REPLACEMENT_SAMPLE = 3;
+	/** Attempts at replacing a member before the offspring is discarded. */
+	private static final int REPLACEMENT_ATTEMPTS = 4;
+	/** Seconds between progress reports. */
+	private static final long REPORT_INTERVAL = 10;
+
+	private final Evolver evolver;
+	private final Evaluator evaluator;
+	private final AtomicReferenceArray<Evaluation> population;
+
+	private final LongAdder evaluations = new LongAdder();
+	private final LongAdder replacements = new LongAdder();
+	private final DoubleAccumulator best =
+			new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+	private final AtomicBoolean solved = new AtomicBoolean(false);
+
+
+	/** Creates and evaluates the initial population. */
+	SteadyState(final Evolver evolver, final Evaluator evaluator,
+	            final int populationSize, final int numInputs, final int numOutputs) {
+		this.evolver = evolver;
+		this.evaluator = evaluator;
+
+		final PopulationScores scores = evaluator.evaluate(
+				evolver.initPopulation(populationSize, numInputs, numOutputs));
+		population = new AtomicReferenceArray<>(scores.size());
+		for (int i = 0; i < scores.size(); i++) {
+			population.set(i, scores.getEvaluation(i));
+			best.accumulate(scores.getFitness(i));
+		}
+		evaluations.add(scores.size());
+	}
+
+
+	/**
+	 * Runs workers until one of them produces a Network with at least the specified
+	 * fitness, reporting the throughput periodically. Uses one worker per thread of the
+	 * WorkerPool, or a single worker if the Evaluator is not thread safe.
+	 */
+	void run(final double minFitness) {
+		final int numWorkers = evaluator.isThreadSafe() ? WorkerPool.getParallelism() : 1;
+		Logger.logf("steady state: %d workers%n", numWorkers);
+
+		// the initial population was evaluated before the clock started
+		final long start = System.nanoTime(), startCount = evaluations.sum();
+		long lastReport = start, lastCount = startCount;
+
+		final ForkJoinPool pool = WorkerPool.get();
+		final List<Future<?>> workers = new ArrayList<>(numWorkers);
+		for (int w = 0; w < numWorkers; w++) {
+			final SplittableRandom random = RandomSource.stream(SteadyState.class.getName(), w);
+			workers.add(pool.submit(() -> work(random, minFitness)));
+		}
+
+		for (final Future<?> worker : workers) {
+			while (true) {
+				try {
+					worker.get(REPORT_INTERVAL, TimeUnit.SECONDS);
+					break;
+				}
+				catch (TimeoutException e) {
+					final long now = System.nanoTime(), count = evaluations.sum();
+					report(count - lastCount, now - lastReport);
+					lastReport = now;
+					lastCount = count;
+				}
+				catch (InterruptedException e) {
+					solved.set(true);
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (ExecutionException e) {
+					solved.set(true);
+					throw new IllegalStateException("Steady state worker failed", e.getCause());
+				}
+			}
+		}
+
+		report(evaluations.sum() - startCount, System.nanoTime() - start);
+	}
+
+	private void report(final long count, final long nanos) {
+		Logger.logf("evaluations: %d; per second: %.1f; replacements: %d; best: %f%n",
+				evaluations.sum(), count / (nanos / 1e9), replacements.sum(), best.get());
+	}
+
+
+	private void work(final SplittableRandom random, final double minFitness) {
+		while (!solved.get()) {
+			Evaluation parent = tournament(random);
+			Evaluation mate = tournament(random);
+			if (mate.getFitness() > parent.getFitness()) {
+				final Evaluation temp = parent;
+				parent = mate;
+				mate = temp;
+			}
+
+			final Network child = evolver.breed(parent.getNetwork(), mate.getNetwork(), random);
+			final double fitness = evaluator.evaluate(child);
+			evaluations.increment();
+			best.accumulate(fitness);
+
+			replace(new Evaluation(child, fitness), random);
+
+			if (fitness >= minFitness)
+				solved.set(true);
+		}
+	}
+
+	private Evaluation tournament(final SplittableRandom random) {
+		Evaluation winner = population.get(random.nextInt(population.length()));
+		for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+			final Evaluation contestant = population.get(random.nextInt(population.length()));
+			if (contestant.getFitness() > winner.getFitness())
+				winner = contestant;
+		}
+		return winner;
+	}
+
+	/**
+	 * Replaces the weakest of a few sampled members with the offspring if it is fitter,
+	 * sampling again if another worker replaced that member first.
+	 */
+	private void replace(final Evaluation offspring, final SplittableRandom random) {
+		for (int attempt = 0; attempt < REPLACEMENT_ATTEMPTS; attempt++) {
+			int weakest = random.nextInt(population.length());
+			Evaluation weakestMember = population.get(weakest);
+			for (int i = 1; i < REPLACEMENT_SAMPLE; i++) {
+				final int index = random.nextInt(population.length());
+				final Evaluation member = population.get(index);
+				if (member.getFitness() < weakestMember.getFitness()) {
+					weakest = index;
+					weakestMember = member;
+				}
+			}
+
+			if (offspring.getFitness() <= weakestMember.getFitness())
+				return;
+			if (population.compareAndSet(weakest, weakestMember, offspring)) {
+				replacements.increment();
+				return;
+			}
+		}
+	}
+}
@@ -32,6 +32,8 @@ public final class Bias extends ExitOnlyNode<Bias> {
 		return id;
 	}
 
+	public double getValue() { return value; }
+
 
 
 	private Bias(
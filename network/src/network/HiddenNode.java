@@ -27,6 +27,9 @@ public final class HiddenNode extends Node<HiddenNode> {
 	}
 
 
+	public DoubleUnaryOperator getActivationFunction() { return actFunc; }
+
+
 	private double result;
 
 	@Override
@@ -290,6 +290,24 @@ public class Network implements DeepCopyable<Network> {
 	}
 
 
+	/**
+	 * Adds a Connection between the specified Nodes without any of the lookups done by
+	 * {@link #putConnection(Connection)}. Meant for building a Network from a structure
+	 * known to be valid: the end Nodes must be the instances in this Network, no
+	 * Connection with the innovation number may exist in this Network, and the
+	 * Connection must not introduce a cycle.
+	 * @return  the new Connection
+	 */
+	public Connection attachConnection(long innovationNumber, double weight,
+	                                   Node<?> from, Node<?> to) {
+		final Connection connection = new Connection(innovationNumber, weight, from, to);
+		from.addOutput(connection);
+		to.addInput(connection);
+		connections.put(innovationNumber, connection);
+		return connection;
+	}
+
+
 	//////////////////////////////
 	//NE related
 
@@ -440,6 +458,55 @@ public class Network implements DeepCopyable<Network> {
 	}
 
 
+	/**
+	 * Computes a hash of the structure of this Network: its Nodes, their types and
+	 * activation functions, bias values, and its Connections with their weights. Networks
+	 * that would compute identically because one is an unmodified copy of the other have
+	 * the same hash. The hash is only meaningful within one run of the application, as
+	 * activation functions are hashed by identity.
+	 */
+	public long structuralHash() {
+		long hash = mix(0, inputs.size());
+		for (final InputNode node : inputs)
+			hash = mix(hash, node.getId());
+
+		hash = mix(hash, outputs.size());
+		for (final OutputNode node : outputs) {
+			hash = mix(hash, node.getId());
+			hash = mix(hash, System.identityHashCode(node.getActivationFunction()));
+		}
+
+		hash = mix(hash, hiddens.size());
+		for (final Node<?> node : hiddens.values()) {
+			hash = mix(hash, node.getId());
+			if (node instanceof HiddenNode)
+				hash = mix(hash, System.identityHashCode(((HiddenNode) node).getActivationFunction()));
+			else if (node instanceof Bias)
+				hash = mix(hash, Double.doubleToLongBits(((Bias) node).getValue()));
+			else
+				hash = mix(hash, node.getClass().hashCode());
+		}
+
+		hash = mix(hash, connections.size());
+		for (final Connection connection : connections.values()) {
+			hash = mix(hash, connection.getInnovationNumber());
+			hash = mix(hash, connection.getPrevNode().getId());
+			hash = mix(hash, connection.getNextNode().getId());
+			hash = mix(hash, Double.doubleToLongBits(connection.getWeight()));
+		}
+
+		// final avalanche
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static long mix(final long hash, final long value) {
+		return Long.rotateLeft(hash ^ (value * 0x9E3779B97F4A7C15L), 31) * 0xBF58476D1CE4E5B9L;
+	}
+
+
 	//////////////////////////////
 	//basic getters - nothing interesting past this point
 
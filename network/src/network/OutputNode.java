@@ -27,6 +27,9 @@ public final class OutputNode extends Node<OutputNode> {
 	}
 
 
+	public DoubleUnaryOperator getActivationFunction() { return actFunc; }
+
+
 	private double result;
 
 	@Override
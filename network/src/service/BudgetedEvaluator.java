@@ -0,0 +1,50 @@
+package service;
+
+import network.Network;
+
+import java.util.Collection;
+import java.util.function.LongConsumer;
+
+/**
+ * An Evaluator whose evaluations can be cut short to a budget, trading accuracy for
+ * speed. What a unit of budget is, e.g. a simulation tick, is up to the implementation,
+ * but a larger budget must never give a less accurate score.
+ */
+public interface BudgetedEvaluator extends Evaluator {
+	/**
+	 * Evaluates the specified Network, spending at most the specified budget.
+	 * @param network	evaluation target
+	 * @param budget    the budget of the evaluation, at most {@link #getFullBudget()}
+	 * @return	the score achieved by the Network within the budget
+	 */
+	double evaluate(Network network, long budget);
+
+	/** The budget of a full evaluation, as done by {@link #evaluate(Network)}. */
+	long getFullBudget();
+
+	@Override
+	default double evaluate(Network network) {
+		return evaluate(network, getFullBudget());
+	}
+
+	/**
+	 * Evaluates the specified Networks with the specified budget each.
+	 * @param networks  the networks to be evaluated
+	 * @param budget    the budget of each evaluation
+	 * @return  the scores of the Networks, in the order in which they were given
+	 */
+	default PopulationScores evaluate(Collection<? extends Network> networks, long budget) {
+		return evaluate(networks, budget, spent -> {});
+	}
+
+	/**
+	 * Evaluates the specified Networks with the specified budget each, reporting the
+	 * budget actually spent on all of them. This is less than budget times the number of
+	 * Networks if evaluations end early, e.g. when a simulated car crashes.
+	 * @param networks  the networks to be evaluated
+	 * @param budget    the budget of each evaluation
+	 * @param spent     receives the budget spent, once the evaluations are done
+	 * @return  the scores of the Networks, in the order in which they were given
+	 */
+	PopulationScores evaluate(Collection<? extends Network> networks, long budget, LongConsumer spent);
+}
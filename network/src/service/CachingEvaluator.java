@@ -0,0 +1,202 @@
+package service;
+
+import network.Network;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the scores given by a deterministic Evaluator, keyed by
+ * {@link Network#structuralHash()}, so Networks carried over unchanged between
+ * generations are not evaluated again. The least recently used scores are evicted once
+ * the cache is full. If the wrapped Evaluator is not deterministic, every Network is
+ * passed through to it.
+ */
+public final class CachingEvaluator implements Evaluator {
+	private final Evaluator evaluator;
+	private final Map<Long, Double> cache;
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+	/**
+	 * Constructs a CachingEvaluator in front of the specified Evaluator.
+	 * @param evaluator the Evaluator to cache the scores of
+	 * @param capacity  the maximum number of scores to keep
+	 */
+	public CachingEvaluator(final Evaluator evaluator, final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		this.evaluator = evaluator;
+		// access ordered LinkedHashMap evicting the least recently used entry
+		cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Double> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+
+	@Override
+	public double evaluate(final Network network) {
+		if (!evaluator.isDeterministic())
+			return evaluator.evaluate(network);
+
+		final long hash = network.structuralHash();
+		final Double cached = lookup(hash);
+		if (cached != null)
+			return cached;
+
+		final double fitness = evaluator.evaluate(network);
+		store(hash, fitness);
+		return fitness;
+	}
+
+
+	/**
+	 * Evaluates the Networks whose scores are not cached as one batch with the wrapped
+	 * Evaluator, then merges in the cached scores.
+	 */
+	@Override
+	public PopulationScores evaluate(final Collection<? extends Network> networks) {
+		if (!evaluator.isDeterministic())
+			return evaluator.evaluate(networks);
+
+		final Network[] population = networks.toArray(new Network[0]);
+		final double[] fitness = new double[population.length];
+		final BitSet inexact = new BitSet();
+
+		// look everything up, remembering where the misses go
+		final long[] hashes = new long[population.length];
+		final List<Network> uncached = new ArrayList<>();
+		final int[] uncachedIndices = new int[population.length];
+		for (int i = 0; i < population.length; i++) {
+			hashes[i] = population[i].structuralHash();
+			final Double cached = lookup(hashes[i]);
+			if (cached != null) {
+				fitness[i] = cached;
+			}
+			else {
+				uncachedIndices[uncached.size()] = i;
+				uncached.add(population[i]);
+			}
+		}
+
+		if (!uncached.isEmpty()) {
+			// scores come back in the order given
+			final PopulationScores scores = evaluator.evaluate(uncached);
+			for (int u = 0; u < scores.size(); u++) {
+				final int i = uncachedIndices[u];
+				fitness[i] = scores.getFitness(u);
+				if (scores.isExact(u))
+					store(hashes[i], fitness[i]);
+				else
+					inexact.set(i);
+			}
+		}
+
+		return new PopulationScores(population, fitness, inexact);
+	}
+
+
+	/**
+	 * Publishes the cached scores right away, followed by the scores published by the
+	 * wrapped Evaluator for the remaining Networks.
+	 */
+	@Override
+	public Flow.Publisher<Evaluation> evaluateAsync(final Collection<? extends Network> networks) {
+		if (!evaluator.isDeterministic())
+			return evaluator.evaluateAsync(networks);
+
+		final List<Network> population = new ArrayList<>(networks);
+
+		return new EvaluationPublisher(sink -> {
+			final List<Evaluation> cached = new ArrayList<>(population.size());
+			final List<Network> uncached = new ArrayList<>();
+			final List<Long> uncachedHashes = new ArrayList<>();
+			split(population, cached, uncached, uncachedHashes);
+
+			cached.forEach(sink);
+
+			if (uncached.isEmpty())
+				return;
+
+			// look hashes up by identity, the evaluated Networks are the same instances
+			final Map<Network, Long> hashes = new IdentityHashMap<>();
+			for (int i = 0; i < uncached.size(); i++)
+				hashes.put(uncached.get(i), uncachedHashes.get(i));
+
+			EvaluationCollector.collect(evaluator.evaluateAsync(uncached), evaluation -> {
+				if (evaluation.isExact())
+					store(hashes.get(evaluation.getNetwork()), evaluation.getFitness());
+				sink.accept(evaluation);
+			});
+		});
+	}
+
+
+	/**
+	 * Looks up every Network in the cache, adding the hits to cached and the misses to
+	 * uncached along with their hashes.
+	 */
+	private void split(final Collection<? extends Network> networks,
+	                   final List<Evaluation> cached,
+	                   final List<Network> uncached,
+	                   final List<Long> uncachedHashes) {
+		for (final Network network : networks) {
+			final long hash = network.structuralHash();
+			final Double fitness = lookup(hash);
+			if (fitness != null) {
+				cached.add(new Evaluation(network, fitness));
+			}
+			else {
+				uncached.add(network);
+				uncachedHashes.add(hash);
+			}
+		}
+	}
+
+	private Double lookup(final long hash) {
+		final Double fitness;
+		synchronized (cache) {
+			fitness = cache.get(hash);
+		}
+		(fitness != null ? hits : misses).incrementAndGet();
+		return fitness;
+	}
+
+	private void store(final long hash, final double fitness) {
+		synchronized (cache) {
+			cache.put(hash, fitness);
+		}
+	}
+
+
+	@Override
+	public void setSurvivorCut(final double fitness) {
+		evaluator.setSurvivorCut(fitness);
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return evaluator.isThreadSafe();
+	}
+
+	@Override
+	public boolean isDeterministic() {
+		return evaluator.isDeterministic();
+	}
+
+
+	/** The number of lookups that found a cached score. */
+	public long getHits() { return hits.get(); }
+	/** The number of lookups that did not find a cached score. */
+	public long getMisses() { return misses.get(); }
+
+	@Override
+	public String toString() {
+		return "Cached " + evaluator + " (hits: " + getHits() + ", misses: " + getMisses() + ")";
+	}
+}
@@ -0,0 +1,107 @@
+package service;
+
+import logging.Logger;
+import network.Network;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+
+/**
+ * Evaluates only one Network out of every group of structurally identical Networks in a
+ * population, as identified by {@link Network#structuralHash()}, and gives its score to
+ * every member of the group. Mutations often leave a copy unchanged or recreate another
+ * member of the population, so such groups are common. The number of evaluations saved is
+ * logged for every population evaluated.
+ */
+public final class DeduplicatingEvaluator implements Evaluator {
+	private final Evaluator evaluator;
+
+	public DeduplicatingEvaluator(final Evaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+
+	@Override
+	public double evaluate(final Network network) {
+		return evaluator.evaluate(network);
+	}
+
+
+	@Override
+	public PopulationScores evaluate(final Collection<? extends Network> networks) {
+		final Map<Network, List<Network>> groups = group(networks);
+
+		final PopulationScores scores = evaluator.evaluate(groups.keySet());
+
+		// fan out
+		final List<Evaluation> evaluations = new ArrayList<>(networks.size());
+		for (int i = 0; i < scores.size(); i++) {
+			for (final Network member : groups.get(scores.getNetwork(i))) {
+				evaluations.add(
+						new Evaluation(member, scores.getFitness(i), scores.isExact(i),
+								scores.getTier(i)));
+			}
+		}
+		return PopulationScores.of(evaluations);
+	}
+
+
+	@Override
+	public Flow.Publisher<Evaluation> evaluateAsync(final Collection<? extends Network> networks) {
+		final Map<Network, List<Network>> groups = group(networks);
+
+		return new EvaluationPublisher(sink ->
+				EvaluationCollector.collect(evaluator.evaluateAsync(groups.keySet()), evaluation -> {
+					for (final Network member : groups.get(evaluation.getNetwork())) {
+						sink.accept((member == evaluation.getNetwork()) ?
+								evaluation :
+								new Evaluation(member, evaluation.getFitness(),
+										evaluation.isExact(), evaluation.getTier()));
+					}
+				})
+		);
+	}
+
+
+	/**
+	 * Groups the specified Networks by structural hash.
+	 * @return  a Map of the first Network of every group to all members of the group,
+	 * in the order of first appearance
+	 */
+	private static Map<Network, List<Network>> group(final Collection<? extends Network> networks) {
+		final Map<Long, List<Network>> byHash = new LinkedHashMap<>();
+		for (final Network network : networks)
+			byHash.computeIfAbsent(network.structuralHash(), hash -> new ArrayList<>()).add(network);
+
+		// keyed by identity, Networks do not override equals
+		final Map<Network, List<Network>> groups = new LinkedHashMap<>();
+		for (final List<Network> members : byHash.values())
+			groups.put(members.get(0), members);
+
+		Logger.logf("deduplication: %d of %d evaluations saved%n",
+				networks.size() - groups.size(), networks.size());
+
+		return groups;
+	}
+
+
+	@Override
+	public void setSurvivorCut(final double fitness) {
+		evaluator.setSurvivorCut(fitness);
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return evaluator.isThreadSafe();
+	}
+
+	@Override
+	public boolean isDeterministic() {
+		return evaluator.isDeterministic();
+	}
+
+	@Override
+	public String toString() {
+		return "Deduplicated " + evaluator;
+	}
+}
@@ -0,0 +1,52 @@
+package service;
+
+import network.Network;
+
+/**
+ * The result of evaluating a single Network.
+ */
+public final class Evaluation {
+	private final Network network;
+	private final double fitness;
+	private final boolean exact;
+	private final int tier;
+
+	/** Constructs an Evaluation with an exact score. */
+	public Evaluation(final Network network, final double fitness) {
+		this(network, fitness, true);
+	}
+
+	/**
+	 * Constructs an Evaluation.
+	 * @param exact false if the evaluation was abandoned early and the fitness is only
+	 *              known to be below the survivor cut
+	 * @see Evaluator#setSurvivorCut(double)
+	 */
+	public Evaluation(final Network network, final double fitness, final boolean exact) {
+		this(network, fitness, exact, 0);
+	}
+
+	/**
+	 * Constructs an Evaluation ranked in the specified tier.
+	 * @param exact false if the evaluation was abandoned early
+	 * @param tier  Evaluations of a higher tier rank above those of a lower tier,
+	 *              regardless of fitness, see {@link PopulationScores}
+	 */
+	public Evaluation(final Network network, final double fitness, final boolean exact,
+	                  final int tier) {
+		this.network = network;
+		this.fitness = fitness;
+		this.exact = exact;
+		this.tier = tier;
+	}
+
+	public Network getNetwork() { return network; }
+	public double getFitness() { return fitness; }
+	public boolean isExact() { return exact; }
+	public int getTier() { return tier; }
+
+	@Override
+	public String toString() {
+		return network + ": " + fitness + (exact ? "" : " (inexact)");
+	}
+}
@@ -0,0 +1,150 @@
+package service;
+
+import network.Network;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Subscribes to a stream of Evaluations and collects them into PopulationScores, as
+ * returned by {@link Evaluator#evaluate(Collection)}. An optional callback sees every Evaluation as
+ * it arrives, so work such as bookkeeping and logging can overlap with the rest of the
+ * evaluation.
+ * Evaluations arrive in an order that depends on thread scheduling. If the evaluated
+ * population is given, the collected PopulationScores are in population order instead,
+ * so that selecting from them by index is reproducible.
+ */
+public final class EvaluationCollector implements Flow.Subscriber<Evaluation> {
+	/** Number of Evaluations requested at a time. */
+	private static final int BATCH = 64;
+
+	private final Consumer<? super Evaluation> onEvaluation;
+	/** The evaluated population, or null to keep the order of arrival. */
+	private final List<? extends Network> population;
+	private final List<Evaluation> evaluations = new ArrayList<>();
+	private final CompletableFuture<PopulationScores> result = new CompletableFuture<>();
+
+	private Flow.Subscription subscription;
+	private int outstanding;
+
+	/** Constructs an EvaluationCollector with no callback, keeping the order of arrival. */
+	public EvaluationCollector() {
+		this(evaluation -> {});
+	}
+
+	/**
+	 * Constructs an EvaluationCollector invoking the specified callback for every
+	 * Evaluation received, on the thread delivering it. The scores are collected in the
+	 * order of arrival.
+	 */
+	public EvaluationCollector(final Consumer<? super Evaluation> onEvaluation) {
+		this(null, onEvaluation);
+	}
+
+	/**
+	 * Constructs an EvaluationCollector invoking the specified callback for every
+	 * Evaluation received, on the thread delivering it. The scores are collected in the
+	 * order of the specified population.
+	 * @param population    the evaluated Networks, null to keep the order of arrival
+	 */
+	public EvaluationCollector(final List<? extends Network> population,
+	                           final Consumer<? super Evaluation> onEvaluation) {
+		this.population = population;
+		this.onEvaluation = onEvaluation;
+	}
+
+
+	/**
+	 * Subscribes a new EvaluationCollector to the specified publisher and waits for all
+	 * Evaluations.
+	 * @return  the scores, in the order in which they arrived
+	 */
+	public static PopulationScores collect(
+			final Flow.Publisher<? extends Evaluation> publisher,
+			final Consumer<? super Evaluation> onEvaluation) {
+		return collect(publisher, null, onEvaluation);
+	}
+
+	/**
+	 * Subscribes a new EvaluationCollector to the specified publisher, which evaluates the
+	 * specified population, and waits for all Evaluations.
+	 * @param population    the evaluated Networks, null to keep the order of arrival
+	 * @return  the scores, in population order
+	 */
+	public static PopulationScores collect(
+			final Flow.Publisher<? extends Evaluation> publisher,
+			final List<? extends Network> population,
+			final Consumer<? super Evaluation> onEvaluation) {
+		final EvaluationCollector collector = new EvaluationCollector(population, onEvaluation);
+		publisher.subscribe(collector);
+		return collector.getResult().join();
+	}
+
+
+	/** Completes with the results once the stream of Evaluations completes. */
+	public CompletableFuture<PopulationScores> getResult() {
+		return result;
+	}
+
+
+	@Override
+	public void onSubscribe(final Flow.Subscription subscription) {
+		this.subscription = subscription;
+		outstanding = BATCH;
+		subscription.request(BATCH);
+	}
+
+	@Override
+	public void onNext(final Evaluation evaluation) {
+		evaluations.add(evaluation);
+		onEvaluation.accept(evaluation);
+
+		// ask for the next batch once the current one is used up
+		if (--outstanding == 0) {
+			outstanding = BATCH;
+			subscription.request(BATCH);
+		}
+	}
+
+	@Override
+	public void onError(final Throwable throwable) {
+		result.completeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		result.complete(PopulationScores.of(
+				(population == null) ? evaluations : inPopulationOrder()));
+	}
+
+	/**
+	 * The Evaluations sorted by the position of their Network in the population. A Network
+	 * appearing several times takes its positions in the order its Evaluations arrived;
+	 * Networks not in the population go last.
+	 */
+	private List<Evaluation> inPopulationOrder() {
+		final Map<Network, Deque<Integer>> positions = new IdentityHashMap<>();
+		for (int i = 0; i < population.size(); i++)
+			positions.computeIfAbsent(population.get(i), network -> new ArrayDeque<>()).add(i);
+
+		final Evaluation[] ordered = new Evaluation[population.size()];
+		final List<Evaluation> strays = new ArrayList<>();
+		for (final Evaluation evaluation : evaluations) {
+			final Deque<Integer> free = positions.get(evaluation.getNetwork());
+			if (free == null || free.isEmpty())
+				strays.add(evaluation);
+			else
+				ordered[free.poll()] = evaluation;
+		}
+
+		final List<Evaluation> result = new ArrayList<>(evaluations.size());
+		for (final Evaluation evaluation : ordered) {
+			if (evaluation != null)
+				result.add(evaluation);
+		}
+		result.addAll(strays);
+		return result;
+	}
+}
@@ -0,0 +1,57 @@
+package service;
+
+import util.WorkerPool;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+
+/**
+ * Publishes Evaluations as they are produced. The evaluation work is only started once a
+ * Subscriber subscribes, and only one Subscriber is supported. Delivery honours the demand
+ * signalled by the Subscriber: once its buffer is full, the threads producing
+ * Evaluations block until the Subscriber catches up.
+ */
+public final class EvaluationPublisher implements Flow.Publisher<Evaluation> {
+	private final Consumer<Consumer<Evaluation>> producer;
+	private final SubmissionPublisher<Evaluation> publisher = new SubmissionPublisher<>();
+
+	private boolean subscribed = false;
+
+	/**
+	 * Constructs an EvaluationPublisher that runs the specified producer on the
+	 * {@link WorkerPool} upon subscription. The producer is given a sink to which it must
+	 * pass every Evaluation; the sink may be used from multiple threads. The stream
+	 * completes when the producer returns, or fails if it throws.
+	 */
+	public EvaluationPublisher(final Consumer<Consumer<Evaluation>> producer) {
+		this.producer = producer;
+	}
+
+	@Override
+	public synchronized void subscribe(final Flow.Subscriber<? super Evaluation> subscriber) {
+		if (subscribed) {
+			// the protocol requires onSubscribe before onError
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override public void request(long n) {}
+				@Override public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("Evaluations already subscribed to"));
+			return;
+		}
+		subscribed = true;
+
+		publisher.subscribe(subscriber);
+
+		WorkerPool.get().execute(() -> {
+			try {
+				producer.accept(publisher::submit);
+			}
+			catch (Throwable e) {
+				publisher.closeExceptionally(e);
+				return;
+			}
+			publisher.close();
+		});
+	}
+}
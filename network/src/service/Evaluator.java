@@ -1,8 +1,10 @@
 package service;
 
 import network.Network;
+import util.WorkerPool;
 
 import java.util.*;
+import java.util.concurrent.Flow;
 
 /**
  * An Evaluator scores a Network.
@@ -16,27 +18,84 @@ public interface Evaluator {
 	double evaluate(Network network);
 
 	/**
-	 * Evaluates the specified Networks and sort the networks in the order of decreasing
-	 * fitness.
+	 * Whether {@link #evaluate(Network)} may be invoked concurrently from multiple threads
+	 * on different Networks. Evaluators that are not thread-safe must override this to
+	 * return false, in which case the default implementation of
+	 * {@link #evaluate(Collection)} evaluates the Networks one by one.
+	 */
+	default boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * Whether {@link #evaluate(Network)} always gives the same score to structurally
+	 * identical Networks. Only the results of deterministic Evaluators may be reused, e.g.
+	 * by a {@link CachingEvaluator}. Defaults to false.
+	 */
+	default boolean isDeterministic() {
+		return false;
+	}
+
+	/**
+	 * Informs this Evaluator of the lowest fitness expected to survive the next selection,
+	 * e.g. the survivor cut of the previous generation. An Evaluator may use this to race:
+	 * to stop evaluating a Network as soon as it can no longer reach the cut, reporting
+	 * an inexact score known to be below the cut instead. Evaluators that race must not
+	 * claim to be deterministic. The default implementation ignores the hint.
+	 * @param fitness   the survivor cut, or negative infinity for none
+	 * @see Evaluation#isExact()
+	 */
+	default void setSurvivorCut(double fitness) {}
+
+	/**
+	 * Evaluates the specified Networks.
+	 * If this Evaluator is thread-safe, the Networks are evaluated in parallel on the
+	 * {@link WorkerPool}.
 	 * @param networks  the networks to be evaluated
-	 * @return  a sorted Map of Networks to scores
+	 * @return  the scores of the Networks, in the order in which they were given
 	 */
-	default Map<Network, Double> evaluate(Collection<? extends Network> networks) {
-		// need to preserve order, doing that with map is too awkward
-		final List<Map.Entry<Network, Double>> scores = new ArrayList<>();
+	default PopulationScores evaluate(Collection<? extends Network> networks) {
+		final Network[] population = networks.toArray(new Network[0]);
+		final double[] fitness = new double[population.length];
 
-		// evaluate networks and add them to scores
-		networks.forEach(network -> scores.add(
-				Map.entry(network, this.evaluate(network))
-		));
+		// evaluate networks, each writes to its own slot
+		if (isThreadSafe()) {
+			WorkerPool.forEachIndex(population.length,
+					i -> fitness[i] = this.evaluate(population[i]));
+		}
+		else {
+			for (int i = 0; i < population.length; i++)
+				fitness[i] = this.evaluate(population[i]);
+		}
 
-		// sort scores
-		scores.sort(Map.Entry.<Network, Double>comparingByValue().reversed());
+		return new PopulationScores(population, fitness);
+	}
 
-		// LinkedHashMap to preserve ordering
-		final Map<Network, Double> result = new LinkedHashMap<>();
-		scores.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+	/**
+	 * Evaluates the specified Networks, publishing each result as soon as it is available
+	 * instead of waiting for the whole population. Evaluation starts when a Subscriber
+	 * subscribes to the returned Publisher. Results arrive in no particular order; an
+	 * {@link EvaluationCollector} given the population restores its order.
+	 * The default implementation evaluates the Networks on the {@link WorkerPool}, in
+	 * parallel if this Evaluator is thread-safe.
+	 * @param networks  the networks to be evaluated
+	 * @return  a Publisher of the evaluation results
+	 * @see EvaluationCollector
+	 */
+	default Flow.Publisher<Evaluation> evaluateAsync(Collection<? extends Network> networks) {
+		final List<Network> population = new ArrayList<>(networks);
 
-		return result;
+		return new EvaluationPublisher(sink -> {
+			if (isThreadSafe()) {
+				WorkerPool.forEachIndex(population.size(), i -> {
+					final Network network = population.get(i);
+					sink.accept(new Evaluation(network, this.evaluate(network)));
+				});
+			}
+			else {
+				for (final Network network : population)
+					sink.accept(new Evaluation(network, this.evaluate(network)));
+			}
+		});
 	}
 }
@@ -3,7 +3,7 @@ package service;
 import network.Network;
 
 import java.util.Collection;
-import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * An Evolver can provide an initial population to be used in neural evolution and produce
@@ -17,15 +17,31 @@ public interface Evolver {
 	Network initNetwork(int numInputs, int numOutputs);
 
 	/**
-	 * Produces the next generation based on the previous generation.
-	 * @param prevGenToFitness    map of previous generation networks to fitness
+	 * Produces the next generation based on the previous generation. Selection and
+	 * breeding take the Networks by their position in the scores, so for a given seed the
+	 * result depends on the order of the scores but not on the number of threads; callers
+	 * collecting the scores from {@link Evaluator#evaluateAsync(Collection)} should put
+	 * them in population order, see {@link EvaluationCollector}.
+	 * @param prevGenScores    the scores of the previous generation
 	 * @param nextGenSize    the number of Networks in the next generation
 	 * @param harshness    the ratio of Networks to be eliminated to the number of
 	 *                        Networks in the current generation
 	 * @return	the next generation
 	 */
 	Collection<Network> nextGeneration(
-			Map<? extends Network, ? extends Double> prevGenToFitness,
+			PopulationScores prevGenScores,
 			int nextGenSize,
 			double harshness);
+
+	/**
+	 * Produces a single offspring of the specified parents, used by steady-state
+	 * evolution where members are replaced one at a time instead of whole generations.
+	 * The parents are only read, so this method may be invoked concurrently, each
+	 * invocation with its own random stream.
+	 * @param parent    the parent that is at least as fit as the mate
+	 * @param mate      the other parent, which Evolvers without crossover ignore
+	 * @param random    the random stream to use, not shared with other threads
+	 * @return  a new Network
+	 */
+	Network breed(Network parent, Network mate, SplittableRandom random);
 }
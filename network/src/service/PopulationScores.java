@@ -0,0 +1,243 @@
+package service;
+
+import network.Network;
+import util.Selection;
+
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * The scores of an evaluated population, held as an array of Networks and a parallel
+ * array of primitive fitness values. The Networks are in no particular order; queries
+ * about the best Networks are answered without sorting the population.
+ *
+ * Networks are ranked by tier first and fitness second: a Network of a higher tier ranks
+ * above every Network of a lower tier, regardless of fitness. Tiers let an Evaluator rank
+ * scores that are not comparable, e.g. the scores of Networks eliminated early by
+ * successive halving below those of the finalists. Usually all Networks are in tier 0.
+ */
+public final class PopulationScores {
+	private final Network[] networks;
+	private final double[] fitness;
+	/** Marks scores of abandoned evaluations, see {@link Evaluation#isExact()}. */
+	private final BitSet inexact;
+	/** The tier of each Network, null if all are in tier 0. */
+	private final int[] tiers;
+
+	/**
+	 * Constructs PopulationScores from parallel arrays, which are used directly and must
+	 * not be modified afterwards.
+	 * @param inexact   indices of inexact scores, may be null if all scores are exact
+	 * @param tiers     the tier of each Network, may be null if all are in tier 0
+	 */
+	public PopulationScores(final Network[] networks, final double[] fitness,
+	                        final BitSet inexact, final int[] tiers) {
+		if (networks.length != fitness.length)
+			throw new IllegalArgumentException("networks and fitness differ in length");
+		if (tiers != null && tiers.length != fitness.length)
+			throw new IllegalArgumentException("tiers and fitness differ in length");
+
+		this.networks = networks;
+		this.fitness = fitness;
+		this.inexact = (inexact == null) ? new BitSet() : inexact;
+		this.tiers = tiers;
+	}
+
+	/**
+	 * Constructs PopulationScores of Networks in tier 0 from parallel arrays, which are
+	 * used directly and must not be modified afterwards.
+	 * @param inexact   indices of inexact scores, may be null if all scores are exact
+	 */
+	public PopulationScores(final Network[] networks, final double[] fitness, final BitSet inexact) {
+		this(networks, fitness, inexact, null);
+	}
+
+	/** Constructs PopulationScores with exact scores from parallel arrays. */
+	public PopulationScores(final Network[] networks, final double[] fitness) {
+		this(networks, fitness, null);
+	}
+
+	/** Constructs PopulationScores holding the specified Evaluations, in order. */
+	public static PopulationScores of(final List<? extends Evaluation> evaluations) {
+		final int size = evaluations.size();
+		final Network[] networks = new Network[size];
+		final double[] fitness = new double[size];
+		final BitSet inexact = new BitSet();
+		final int[] tiers = new int[size];
+		boolean tiered = false;
+
+		for (int i = 0; i < size; i++) {
+			final Evaluation evaluation = evaluations.get(i);
+			networks[i] = evaluation.getNetwork();
+			fitness[i] = evaluation.getFitness();
+			if (!evaluation.isExact())
+				inexact.set(i);
+			tiers[i] = evaluation.getTier();
+			tiered |= tiers[i] != 0;
+		}
+		return new PopulationScores(networks, fitness, inexact, tiered ? tiers : null);
+	}
+
+
+	/** The number of Networks in the population. */
+	public int size() { return networks.length; }
+
+	public Network getNetwork(final int index) { return networks[index]; }
+	public double getFitness(final int index) { return fitness[index]; }
+	public boolean isExact(final int index) { return !inexact.get(index); }
+	public int getTier(final int index) { return (tiers == null) ? 0 : tiers[index]; }
+
+	/** An unmodifiable List view of the Networks, in index order. */
+	public List<Network> getNetworks() {
+		return Collections.unmodifiableList(Arrays.asList(networks));
+	}
+
+	/** The Evaluation of the Network at the specified index. */
+	public Evaluation getEvaluation(final int index) {
+		return new Evaluation(networks[index], fitness[index], isExact(index), getTier(index));
+	}
+
+	/** Whether the Network at index i ranks strictly above the one at index j. */
+	private boolean ranksAbove(final int i, final int j) {
+		final int tierI = getTier(i), tierJ = getTier(j);
+		return (tierI != tierJ) ? tierI > tierJ : fitness[i] > fitness[j];
+	}
+
+
+	/**
+	 * The index of the best ranked Network, or -1 if the population is empty. Of Networks
+	 * of equal rank, the one with the lowest index is chosen.
+	 */
+	public int best() {
+		int best = -1;
+		for (int i = 0; i < fitness.length; i++) {
+			if (best < 0 || ranksAbove(i, best))
+				best = i;
+		}
+		return best;
+	}
+
+	/** The best ranked Network, or null if the population is empty. */
+	public Network getBest() {
+		final int best = best();
+		return (best < 0) ? null : networks[best];
+	}
+
+	/**
+	 * The fitness of the best ranked Network, or negative infinity if the population is
+	 * empty. Without tiers, this is the highest fitness.
+	 */
+	public double getBestFitness() {
+		final int best = best();
+		return (best < 0) ? Double.NEGATIVE_INFINITY : fitness[best];
+	}
+
+
+	/**
+	 * The rank of the Network at the specified index, i.e. the number of Networks ranked
+	 * strictly above it. The best ranked Networks have rank 0.
+	 */
+	public int rank(final int index) {
+		int rank = 0;
+		for (int i = 0; i < fitness.length; i++) {
+			if (ranksAbove(i, index))
+				rank++;
+		}
+		return rank;
+	}
+
+	/**
+	 * The fitness of the Network at the specified rank, i.e. of the (rank+1)-th best
+	 * ranked Network counting duplicates. Without tiers, this is the (rank+1)-th highest
+	 * fitness. Runs in expected linear time.
+	 */
+	public double fitnessAtRank(final int rank) {
+		if (rank < 0 || rank >= fitness.length)
+			throw new IndexOutOfBoundsException("rank " + rank + " out of " + fitness.length);
+
+		final int[] indices = topK(rank + 1);
+		int lowest = indices[0];
+		for (final int i : indices) {
+			if (ranksAbove(lowest, i))
+				lowest = i;
+		}
+		return fitness[lowest];
+	}
+
+
+	/**
+	 * Finds the indices of the k best ranked Networks, in no particular order. Runs in
+	 * expected linear time.
+	 * @param k the number of Networks to find, clamped to the size of the population
+	 */
+	public int[] topK(final int k) {
+		return topK(k, null);
+	}
+
+	/**
+	 * Finds the indices of the k best ranked Networks, in no particular order, choosing
+	 * randomly among Networks of equal rank at the boundary.
+	 */
+	public int[] topK(final int k, final RandomGenerator random) {
+		if (tiers == null)
+			return Selection.topK(fitness, k, random);
+
+		// whole tiers from the highest down, then the fittest of the tier at the boundary
+		final int count = Math.max(0, Math.min(k, fitness.length));
+		final int[] top = new int[count];
+		int found = 0;
+		final int[] levels = Arrays.stream(tiers).distinct().sorted().toArray();
+		for (int level = levels.length - 1; level >= 0 && found < count; level--) {
+			final int[] members = membersOf(levels[level]);
+			if (members.length <= count - found) {
+				System.arraycopy(members, 0, top, found, members.length);
+				found += members.length;
+				continue;
+			}
+
+			final double[] memberFitness = new double[members.length];
+			for (int m = 0; m < members.length; m++)
+				memberFitness[m] = fitness[members[m]];
+			for (final int m : Selection.topK(memberFitness, count - found, random))
+				top[found++] = members[m];
+		}
+		return top;
+	}
+
+	/** The indices of the Networks in the tier. */
+	private int[] membersOf(final int tier) {
+		int size = 0;
+		for (final int t : tiers) {
+			if (t == tier)
+				size++;
+		}
+
+		final int[] members = new int[size];
+		int m = 0;
+		for (int i = 0; i < tiers.length; i++) {
+			if (tiers[i] == tier)
+				members[m++] = i;
+		}
+		return members;
+	}
+
+	/** The k best ranked Networks, in no particular order. */
+	public List<Network> getTopK(final int k) {
+		return toNetworks(topK(k));
+	}
+
+	/**
+	 * The k best ranked Networks, in no particular order, choosing randomly among Networks
+	 * of equal rank at the boundary.
+	 */
+	public List<Network> getTopK(final int k, final RandomGenerator random) {
+		return toNetworks(topK(k, random));
+	}
+
+	private List<Network> toNetworks(final int[] indices) {
+		final List<Network> selected = new ArrayList<>(indices.length);
+		for (final int i : indices)
+			selected.add(networks[i]);
+		return selected;
+	}
+}
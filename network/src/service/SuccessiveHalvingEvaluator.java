@@ -0,0 +1,160 @@
+package service;
+
+import logging.Logger;
+import network.Network;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates populations by successive halving: the whole population is first evaluated
+ * with a small budget, then only the best fraction is promoted to be evaluated again with
+ * a larger budget, and so on until the finalists are evaluated with the full budget.
+ * With rungs r and reduction factor eta, rung k (counting from 0) uses a budget of
+ * full / eta^(r-1-k) and promotes the best 1/eta of its Networks.
+ *
+ * Networks keep the score of the last rung they reached, and the rung as their tier, so
+ * Networks that reached a later rung rank above Networks eliminated earlier, regardless
+ * of score, see {@link PopulationScores}. Only the scores of the finalists are exact.
+ * The budget actually spent is logged for every population, along with the most that
+ * evaluating every Network with the full budget could have spent.
+ */
+public final class SuccessiveHalvingEvaluator implements Evaluator {
+	private final BudgetedEvaluator evaluator;
+	private final int rungs;
+	private final double eta;
+
+	private volatile double survivorCut = Double.NEGATIVE_INFINITY;
+
+	private final AtomicLong budgetSpent = new AtomicLong();
+
+	/**
+	 * Constructs a SuccessiveHalvingEvaluator.
+	 * @param evaluator the Evaluator doing the evaluations, must have a bounded full budget
+	 * @param rungs     the number of budgets the population goes through, at least 1
+	 * @param eta       the factor between consecutive budgets and the inverse of the
+	 *                  fraction of Networks promoted, greater than 1
+	 */
+	public SuccessiveHalvingEvaluator(
+			final BudgetedEvaluator evaluator, final int rungs, final double eta) {
+		if (rungs < 1)
+			throw new IllegalArgumentException("rungs must be at least 1");
+		if (!(eta > 1))
+			throw new IllegalArgumentException("eta must be greater than 1");
+		if (evaluator.getFullBudget() <= 0 || evaluator.getFullBudget() == Long.MAX_VALUE)
+			throw new IllegalArgumentException("Evaluator has no bounded full budget: " + evaluator);
+
+		this.evaluator = evaluator;
+		this.rungs = rungs;
+		this.eta = eta;
+	}
+
+
+	/** Evaluates a single Network with the full budget. */
+	@Override
+	public double evaluate(final Network network) {
+		return evaluator.evaluate(network);
+	}
+
+
+	@Override
+	public PopulationScores evaluate(final Collection<? extends Network> networks) {
+		return PopulationScores.of(race(networks));
+	}
+
+	/** Publishes the results once all rungs are done. */
+	@Override
+	public Flow.Publisher<Evaluation> evaluateAsync(final Collection<? extends Network> networks) {
+		final List<Network> population = new ArrayList<>(networks);
+		return new EvaluationPublisher(sink -> race(population).forEach(sink));
+	}
+
+
+	/**
+	 * Runs the population through all rungs.
+	 * @return  the Evaluations, finalists first, then in the reverse order of the rung
+	 * the Networks were eliminated in
+	 */
+	private List<Evaluation> race(final Collection<? extends Network> networks) {
+		final long fullBudget = evaluator.getFullBudget();
+
+		// groups of eliminated Networks, the last added group is the best
+		final Deque<List<Evaluation>> eliminated = new ArrayDeque<>();
+		Collection<? extends Network> candidates = networks;
+		final AtomicLong spent = new AtomicLong();
+
+		for (int rung = 0; rung < rungs; rung++) {
+			final boolean last = rung == rungs - 1;
+			final long budget = last ?
+					fullBudget :
+					Math.max(1, Math.round(fullBudget / Math.pow(eta, rungs - 1 - rung)));
+
+			// the cut is about full evaluations, it would eliminate everyone earlier
+			evaluator.setSurvivorCut(last ? survivorCut : Double.NEGATIVE_INFINITY);
+			final PopulationScores scores = evaluator.evaluate(candidates, budget, spent::addAndGet);
+
+			final int promoted = last ?
+					scores.size() :
+					(int) Math.min(scores.size(), Math.ceil(scores.size() / eta));
+
+			if (last) {
+				final List<Evaluation> ranked = new ArrayList<>(networks.size());
+				for (int i = 0; i < scores.size(); i++)
+					ranked.add(new Evaluation(scores.getNetwork(i), scores.getFitness(i),
+							scores.isExact(i), rung));
+				eliminated.forEach(ranked::addAll);
+
+				budgetSpent.addAndGet(spent.get());
+				Logger.logf("successive halving: %d budget spent; at most %d with the full budget%n",
+						spent.get(), fullBudget * networks.size());
+
+				return ranked;
+			}
+
+			final BitSet isPromoted = new BitSet(scores.size());
+			for (final int i : scores.topK(promoted))
+				isPromoted.set(i);
+
+			final List<Network> next = new ArrayList<>(promoted);
+			final List<Evaluation> dropped = new ArrayList<>(scores.size() - promoted);
+			for (int i = 0; i < scores.size(); i++) {
+				if (isPromoted.get(i))
+					next.add(scores.getNetwork(i));
+				else
+					dropped.add(new Evaluation(scores.getNetwork(i), scores.getFitness(i), false, rung));
+			}
+			eliminated.push(dropped);
+
+			candidates = next;
+		}
+
+		throw new AssertionError("unreachable");
+	}
+
+
+	@Override
+	public void setSurvivorCut(final double fitness) {
+		survivorCut = fitness;
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return evaluator.isThreadSafe();
+	}
+
+	/** Which Networks get promoted depends on the rest of the population. */
+	@Override
+	public boolean isDeterministic() {
+		return false;
+	}
+
+
+	/** Total budget actually spent over all evaluated populations. */
+	public long getBudgetSpent() { return budgetSpent.get(); }
+
+	@Override
+	public String toString() {
+		return "Successive halving (" + rungs + " rungs, eta " + eta + ") " + evaluator;
+	}
+}
@@ -0,0 +1,70 @@
+package util;
+
+import logging.Logger;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * Provides the random number generators of the application, all derived from one seed
+ * read from the "seed" property of the configuration loaded by {@link ConfigLoader}.
+ * If no seed is configured, a random one is chosen and logged so the run can be
+ * repeated.
+ * Every component asks for its own stream identified by a name and optionally numeric
+ * keys such as a worker or genome index. Streams with different names or keys are
+ * independent, and the same name and keys always give the same stream for a given seed,
+ * so nothing depends on which thread asks first.
+ */
+public final class RandomSource {
+	/** Name of the configuration property specifying the seed. */
+	public static final String SEED_PROPERTY = "seed";
+
+	private static volatile Long SEED;
+
+	private RandomSource() {}
+
+
+	/** Gets the seed, reading it from the configuration or choosing one on first use. */
+	public static long getSeed() {
+		if (SEED == null) {
+			synchronized (RandomSource.class) {
+				if (SEED == null) {
+					final Properties config = ConfigLoader.getConfig();
+					final String value =
+							(config == null) ? null : config.getProperty(SEED_PROPERTY);
+
+					if (value == null || value.isBlank()) {
+						SEED = new SplittableRandom().nextLong();
+						Logger.logf("seed: %d (random)%n", SEED);
+					}
+					else {
+						SEED = Long.parseLong(value.trim());
+						Logger.logf("seed: %d%n", SEED);
+					}
+				}
+			}
+		}
+		return SEED;
+	}
+
+
+	/**
+	 * Creates the stream identified by the specified name and keys. The returned
+	 * generator is not thread safe; use {@link SplittableRandom#split()} or further keys
+	 * to hand streams to other threads.
+	 */
+	public static SplittableRandom stream(final String name, final long... keys) {
+		long hash = mix(getSeed() ^ mix(name.hashCode()));
+		for (final long key : keys)
+			hash = mix(hash ^ mix(key));
+		return new SplittableRandom(hash);
+	}
+
+	/** The finalizer of SplitMix64, spreads every bit of the input over the output. */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
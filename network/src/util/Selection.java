@@ -0,0 +1,250 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.random.RandomGenerator;
+
+/**
+ * Selection operators over primitive arrays of fitness values, shared by Evolvers. All
+ * operators work on indices into the fitness array, so the population itself never has
+ * to be sorted or copied.
+ */
+public final class Selection {
+	/**
+	 * Name of the configuration property specifying how parents are chosen among the
+	 * survivors of a generation, one of "uniform", "tournament" or "proportionate".
+	 */
+	public static final String SELECTION_PROPERTY = "selection";
+
+	/** Number of contestants of a tournament. */
+	public static final int TOURNAMENT_SIZE = 2;
+
+	/** The ways parents can be chosen among survivors. */
+	public enum Scheme {
+		/** Every survivor is equally likely to be chosen. */
+		UNIFORM,
+		/** The fittest of {@link #TOURNAMENT_SIZE} random survivors is chosen. */
+		TOURNAMENT,
+		/** Survivors are chosen with probability proportional to their fitness. */
+		PROPORTIONATE
+	}
+
+	private Selection() {}
+
+
+	/** The Scheme specified by the configuration, UNIFORM if none is specified. */
+	public static Scheme getConfiguredScheme() {
+		final Properties config = ConfigLoader.getConfig();
+		final String value = (config == null) ? null : config.getProperty(SELECTION_PROPERTY);
+
+		if (value == null || value.isBlank())
+			return Scheme.UNIFORM;
+		return Scheme.valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+
+
+	/**
+	 * Chooses count parents according to the specified Scheme.
+	 * @return  indices into fitness, possibly repeated
+	 */
+	public static int[] choose(final Scheme scheme, final double[] fitness, final int count,
+	                           final RandomGenerator random) {
+		if (fitness.length == 0 && count > 0)
+			throw new IllegalArgumentException("cannot choose from an empty population");
+
+		switch (scheme) {
+			case TOURNAMENT: {
+				final int[] chosen = new int[count];
+				for (int i = 0; i < count; i++)
+					chosen[i] = tournament(fitness, TOURNAMENT_SIZE, random);
+				return chosen;
+			}
+			case PROPORTIONATE:
+				return proportionate(fitness, count, random);
+			default: {
+				final int[] chosen = new int[count];
+				for (int i = 0; i < count; i++)
+					chosen[i] = random.nextInt(fitness.length);
+				return chosen;
+			}
+		}
+	}
+
+
+	/**
+	 * Finds the indices of the k highest fitness values, in no particular order. Runs in
+	 * expected linear time, and in O(n log k) in the worst case.
+	 * @param k         the number of indices to find, clamped to the length of fitness
+	 * @param random    breaks ties between equal fitness values at the boundary randomly,
+	 *                  or null to break them in an unspecified but repeatable way
+	 */
+	public static int[] topK(final double[] fitness, final int k,
+	                         final RandomGenerator random) {
+		final int count = Math.max(0, Math.min(k, fitness.length));
+
+		final int[] indices = new int[fitness.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = i;
+
+		// the partitions pick from equal values by position, so shuffled positions make a
+		// random pick
+		if (random != null) {
+			for (int i = indices.length - 1; i > 0; i--) {
+				final int j = random.nextInt(i + 1);
+				final int temp = indices[i];
+				indices[i] = indices[j];
+				indices[j] = temp;
+			}
+		}
+
+		select(fitness, indices, count);
+		return Arrays.copyOf(indices, count);
+	}
+
+	/**
+	 * Introselect, rearranges indices so that the first k refer to the k highest fitness
+	 * values. Quickselect falls back to a heap once it has partitioned more often than a
+	 * balanced run would need.
+	 */
+	private static void select(final double[] fitness, final int[] indices, final int k) {
+		int low = 0, high = indices.length - 1;
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(indices.length));
+
+		while (low < high && k > low && k <= high) {
+			if (depth-- == 0) {
+				heapSelect(fitness, indices, low, high, k);
+				return;
+			}
+
+			// median of three as pivot
+			final int mid = (low + high) >>> 1;
+			final double pivot = median(
+					fitness[indices[low]], fitness[indices[mid]], fitness[indices[high]]);
+
+			// partition into fitter than pivot, then the rest, in decreasing order
+			int i = low, j = high;
+			while (i <= j) {
+				while (fitness[indices[i]] > pivot) i++;
+				while (fitness[indices[j]] < pivot) j--;
+				if (i <= j) {
+					swap(indices, i, j);
+					i++; j--;
+				}
+			}
+
+			// [low, j] >= pivot >= [i, high]; continue in the part containing position k
+			if (k <= j)
+				high = j;
+			else if (k >= i)
+				low = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Moves the highest k - low values of [low, high] to [low, k) by keeping them in a
+	 * min-heap while scanning the rest of the range.
+	 */
+	private static void heapSelect(final double[] fitness, final int[] indices,
+	                               final int low, final int high, final int k) {
+		final int size = k - low;
+		for (int i = size / 2 - 1; i >= 0; i--)
+			siftDown(fitness, indices, low, size, i);
+
+		for (int i = k; i <= high; i++) {
+			if (fitness[indices[i]] > fitness[indices[low]]) {
+				swap(indices, low, i);
+				siftDown(fitness, indices, low, size, 0);
+			}
+		}
+	}
+
+	private static void siftDown(final double[] fitness, final int[] indices,
+	                             final int offset, final int size, int node) {
+		while (true) {
+			final int left = 2 * node + 1, right = left + 1;
+			int smallest = node;
+			if (left < size && fitness[indices[offset + left]] < fitness[indices[offset + smallest]])
+				smallest = left;
+			if (right < size && fitness[indices[offset + right]] < fitness[indices[offset + smallest]])
+				smallest = right;
+			if (smallest == node)
+				return;
+
+			swap(indices, offset + node, offset + smallest);
+			node = smallest;
+		}
+	}
+
+	private static double median(final double a, final double b, final double c) {
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+
+	private static void swap(final int[] indices, final int i, final int j) {
+		final int temp = indices[i];
+		indices[i] = indices[j];
+		indices[j] = temp;
+	}
+
+
+	/**
+	 * Tournament selection, draws size random indices with replacement and returns the
+	 * one with the highest fitness. Of equal fitness values, the one drawn first wins.
+	 */
+	public static int tournament(final double[] fitness, final int size,
+	                             final RandomGenerator random) {
+		int winner = random.nextInt(fitness.length);
+		for (int i = 1; i < size; i++) {
+			final int contestant = random.nextInt(fitness.length);
+			if (fitness[contestant] > fitness[winner])
+				winner = contestant;
+		}
+		return winner;
+	}
+
+
+	/**
+	 * Fitness proportionate selection by stochastic universal sampling: count evenly
+	 * spaced pointers with a random offset are laid over the cumulative fitness, so every
+	 * index is chosen within one of its expected number of times in a single pass.
+	 * Fitness values are taken relative to the lowest one, so negative values are allowed
+	 * and the least fit is never chosen; if all values are equal, all are equally likely.
+	 * @return  indices into fitness in increasing order, possibly repeated
+	 */
+	public static int[] proportionate(final double[] fitness, final int count,
+	                                  final RandomGenerator random) {
+		final int[] chosen = new int[count];
+		if (count == 0)
+			return chosen;
+
+		double min = Double.POSITIVE_INFINITY, total = 0;
+		for (final double f : fitness)
+			min = Math.min(min, f);
+		for (final double f : fitness)
+			total += f - min;
+
+		// no differences to go by, or infinite ones
+		if (!(total > 0) || Double.isInfinite(total)) {
+			for (int i = 0; i < count; i++)
+				chosen[i] = random.nextInt(fitness.length);
+			Arrays.sort(chosen);
+			return chosen;
+		}
+
+		final double step = total / count;
+		double pointer = random.nextDouble() * step;
+		double cumulative = 0;
+		int index = -1;
+		for (int i = 0; i < count; i++) {
+			while (cumulative <= pointer && index < fitness.length - 1) {
+				index++;
+				cumulative += fitness[index] - min;
+			}
+			chosen[i] = index;
+			pointer += step;
+		}
+		return chosen;
+	}
+}
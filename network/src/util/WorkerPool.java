@@ -0,0 +1,80 @@
+package util;
+
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Provides the application global pool of worker threads used to spread work such as
+ * evaluations over all cores. The size of the pool is read from the "parallelism"
+ * property of the configuration loaded by {@link ConfigLoader}; a missing or
+ * non-positive value means one thread per available processor, and 1 disables
+ * parallelism entirely.
+ */
+public final class WorkerPool {
+	/** Name of the configuration property specifying the number of worker threads. */
+	public static final String PARALLELISM_PROPERTY = "parallelism";
+
+	private static volatile ForkJoinPool POOL;
+
+	private WorkerPool() {}
+
+
+	/**
+	 * Gets the global pool, creating it on first use. If the caller is itself running in
+	 * a ForkJoinPool, that pool is returned instead so nested work stays in the pool it
+	 * was started from.
+	 */
+	public static ForkJoinPool get() {
+		final ForkJoinPool current = ForkJoinTask.getPool();
+		if (current != null)
+			return current;
+
+		if (POOL == null) {
+			synchronized (WorkerPool.class) {
+				if (POOL == null)
+					POOL = new ForkJoinPool(getConfiguredParallelism());
+			}
+		}
+		return POOL;
+	}
+
+	/** The number of threads work is spread over. */
+	public static int getParallelism() {
+		final ForkJoinPool current = ForkJoinTask.getPool();
+		if (current != null)
+			return current.getParallelism();
+		return (POOL != null) ? POOL.getParallelism() : getConfiguredParallelism();
+	}
+
+	private static int getConfiguredParallelism() {
+		final Properties config = ConfigLoader.getConfig();
+		final String value = (config == null) ? null : config.getProperty(PARALLELISM_PROPERTY);
+
+		final int parallelism = (value == null || value.isBlank()) ? 0 : Integer.parseInt(value.trim());
+		return (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+
+
+	/**
+	 * Invokes the action for every index from 0 (inclusive) to count (exclusive), spread
+	 * over the pool, and blocks until all invocations complete. The order of invocations
+	 * is unspecified. Runs on the calling thread if the parallelism is 1.
+	 */
+	public static void forEachIndex(final int count, final IntConsumer action) {
+		if (count <= 1 || getParallelism() == 1) {
+			for (int i = 0; i < count; i++)
+				action.accept(i);
+			return;
+		}
+
+		final ForkJoinPool pool = get();
+		// a parallel stream started from within a pool runs in that pool
+		if (ForkJoinTask.getPool() == pool)
+			IntStream.range(0, count).parallel().forEach(action);
+		else
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+	}
+}
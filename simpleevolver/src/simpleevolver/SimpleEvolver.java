@@ -2,9 +2,13 @@ package simpleevolver;
 
 import network.*;
 import service.Evolver;
+import service.PopulationScores;
+import util.RandomSource;
+import util.Selection;
+import util.WorkerPool;
 
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,7 +19,22 @@ import java.util.stream.Stream;
  */
 public final class SimpleEvolver implements Evolver {
 
-	private final Random random = new Random();
+	/** Number of offspring bred on one random stream by one worker. */
+	private static final int BREED_CHUNK_SIZE = 32;
+
+	/**
+	 * The master random stream, used on the calling thread only; workers breeding
+	 * offspring get streams split off from it. Created on first use, once the
+	 * configuration holding the seed is loaded.
+	 */
+	private SplittableRandom master;
+
+	/**
+	 * Numbers instances in order of creation, so every instance, such as the Evolver of
+	 * each island, gets its own random stream.
+	 */
+	private static final AtomicLong INSTANCES = new AtomicLong();
+	private final long instance = INSTANCES.getAndIncrement();
 
 
 	/**
@@ -48,6 +67,7 @@ public final class SimpleEvolver implements Evolver {
 	 */
 	@Override
 	public Network initNetwork(int numInputs, int numOutputs) {
+		final SplittableRandom random = master();
 		final Network network = new Network(numInputs, numOutputs, Math::tanh);
 
 		// connect input to output nodes
@@ -69,7 +89,7 @@ public final class SimpleEvolver implements Evolver {
 	 */
 	@Override
 	public Collection<Network> nextGeneration(
-			final Map<? extends Network, ? extends Double> prevGenToFitness,
+			final PopulationScores prevGenScores,
 			final int nextGenSize,
 			final double harshness) {
 		if (nextGenSize < 0)
@@ -77,71 +97,109 @@ public final class SimpleEvolver implements Evolver {
 		if (harshness < 0 || harshness > 1)
 			throw new IllegalArgumentException("harshness must be between 0 and 1 inclusive");
 
-		final List<Map.Entry<? extends Network, ? extends Double>> entries =
-				new ArrayList<>(prevGenToFitness.entrySet());
+		final SplittableRandom random = master();
 
 		// eliminate
 		final long numSurvivors =
-				Math.round(prevGenToFitness.size() * (1 - harshness));
+				Math.round(prevGenScores.size() * (1 - harshness));
+
+		// select the fittest networks, scrambling those of equal fitness at the boundary
+		final int[] survivorIndices = prevGenScores.topK((int) numSurvivors, random);
+		final List<Network> survivors = new ArrayList<>(survivorIndices.length);
+		final double[] survivorFitness = new double[survivorIndices.length];
+		for (int i = 0; i < survivorIndices.length; i++) {
+			survivors.add(prevGenScores.getNetwork(survivorIndices[i]));
+			survivorFitness[i] = prevGenScores.getFitness(survivorIndices[i]);
+		}
 
-		Comparator<Double> comp = Double::compare;
-		comp = comp.reversed();
-		// sort networks by fitness
-		// also scramble the order of equal fitness networks
-		final var sortedEntries = scrambleSort(entries, Map.Entry::getValue, comp);
-		final List<Network> survivors =
-				sortedEntries.stream()
-						.map(Map.Entry::getKey)
-						.limit(numSurvivors)
-						.collect(Collectors.toList());
+		// choose the parent of each new network
+		final int[] parents = Selection.choose(
+				Selection.getConfiguredScheme(),
+				survivorFitness,
+				Math.max(0, nextGenSize - survivors.size()),
+				random);
+
+
+		// breed new networks in parallel, in chunks with their own random streams split
+		// off in order, so the result does not depend on the number of threads
+		final Network[] offspring = new Network[parents.length];
+		final int numChunks = (parents.length + BREED_CHUNK_SIZE - 1) / BREED_CHUNK_SIZE;
+		final SplittableRandom[] streams = new SplittableRandom[numChunks];
+		for (int chunk = 0; chunk < numChunks; chunk++)
+			streams[chunk] = random.split();
+
+		WorkerPool.forEachIndex(numChunks, chunk -> {
+			final SplittableRandom rng = streams[chunk];
+			final int end = Math.min(parents.length, (chunk + 1) * BREED_CHUNK_SIZE);
+			for (int i = chunk * BREED_CHUNK_SIZE; i < end; i++)
+				offspring[i] = breed(survivors.get(parents[i]), rng);
+		});
+
+
+		final List<Network> nextGen = new ArrayList<>(survivors.size() + offspring.length);
+		nextGen.addAll(survivors);
+		nextGen.addAll(Arrays.asList(offspring));
+		return nextGen;
+	}
 
 
-		// generate new networks
-		final List<Network> nextGen = new ArrayList<>(survivors);
-		while (nextGen.size() < nextGenSize) {
+	private SplittableRandom master() {
+		if (master == null)
+			master = RandomSource.stream(getClass().getName(), instance);
+		return master;
+	}
 
-			final Network survivor = survivors.get(random.nextInt(survivors.size()));
 
-			// clone survivor
-			final Network clone = survivor.copy();
+	/**
+	 * Creates a mutated copy of the parent; there are no crossovers, so the mate is
+	 * ignored.
+	 */
+	@Override
+	public Network breed(final Network parent, final Network mate, final SplittableRandom random) {
+		return breed(parent, random);
+	}
 
-			// some chance to change weight
-			if (random.nextDouble() > 0.5) {
-				randomlyChangeWeight(clone);
-			}
-			else {
-				// 1/2 chance to add connection, add node
-				if (random.nextBoolean())
-					randomlyAddConnection(clone);
-				if (random.nextBoolean())
-					randomlyAddNode(clone);
-			}
+	/**
+	 * Creates a copy of the specified survivor with random mutations. Only reads the
+	 * survivor, so the same survivor may be bred on several threads at once.
+	 */
+	private Network breed(final Network survivor, final SplittableRandom rng) {
+		// clone survivor
+		final Network clone = survivor.copy();
 
-			nextGen.add(clone);
+		// some chance to change weight
+		if (rng.nextDouble() > 0.5) {
+			randomlyChangeWeight(clone, rng);
+		}
+		else {
+			// 1/2 chance to add connection, add node
+			if (rng.nextBoolean())
+				randomlyAddConnection(clone, rng);
+			if (rng.nextBoolean())
+				randomlyAddNode(clone, rng);
 		}
 
-
-		return nextGen;
+		return clone;
 	}
 
 
 	/**
 	 * Randomly changes the weight of a single connection in the network.
 	 */
-	private void randomlyChangeWeight(Network network) {
+	private void randomlyChangeWeight(Network network, SplittableRandom rng) {
 		// don't do anything if empty
 		final var connections = network.getConnections();
 		if (connections.size() == 0) return;
 
 		final var it = connections.iterator();
-		final int randInt = random.nextInt(connections.size());
+		final int randInt = rng.nextInt(connections.size());
 
 		// does not support indexed access, iterate to desired index
 		for (int i = 0; i < randInt; i++) it.next();
 		final var connection = it.next();
 
 		// random weight
-		connection.setWeight(random.nextDouble());
+		connection.setWeight(rng.nextDouble());
 	}
 
 	/**
@@ -149,11 +207,11 @@ public final class SimpleEvolver implements Evolver {
 	 * placed on an existing connection and splits the connection, or a bias node creating
 	 * a new connection.
 	 */
-	private void randomlyAddNode(Network network) {
+	private void randomlyAddNode(Network network, SplittableRandom rng) {
 		// add a random bias
-		if (random.nextBoolean()) {
+		if (rng.nextBoolean()) {
 			final var bias =
-					new NodeBuilder(NodeType.BIAS).setValue(random.nextDouble() - 0.5).build();
+					new NodeBuilder(NodeType.BIAS).setValue(rng.nextDouble() - 0.5).build();
 
 			// random target to connect to
 			final var tos = new ArrayList<Node<?>>();
@@ -162,9 +220,9 @@ public final class SimpleEvolver implements Evolver {
 
 			network.putNode(bias);
 
-			final var target = tos.get(random.nextInt(tos.size()));
+			final var target = tos.get(rng.nextInt(tos.size()));
 
-			network.tryConnect(bias, target, random.nextDouble());
+			network.tryConnect(bias, target, rng.nextDouble());
 		}
 		// add new node and split connection
 		else {
@@ -173,7 +231,7 @@ public final class SimpleEvolver implements Evolver {
 			final var size = connections.size();
 			if (size == 0) return;
 
-			final var target = random.nextInt(size);
+			final var target = rng.nextInt(size);
 
 			// does not support indexed access, iterate elements to skip to target
 			final var it = connections.iterator();
@@ -187,7 +245,7 @@ public final class SimpleEvolver implements Evolver {
 	/**
 	 * Randomly adds a Connection to a copy of the specified Network.
 	 */
-	private void randomlyAddConnection(Network network) {
+	private void randomlyAddConnection(Network network, SplittableRandom rng) {
 		// options to randomly select from
 		final var froms = new ArrayList<Node<?>>();
 		froms.addAll(network.getInputs());
@@ -200,11 +258,11 @@ public final class SimpleEvolver implements Evolver {
 
 		while (!froms.isEmpty() && !tos.isEmpty()) {
 			// a random connection
-			final int fromIndex = random.nextInt(froms.size());
+			final int fromIndex = rng.nextInt(froms.size());
 			final var from = froms.remove(fromIndex);
-			final int toIndex = random.nextInt(tos.size());
+			final int toIndex = rng.nextInt(tos.size());
 			final var to = tos.remove(toIndex);
-			final double weight = random.nextDouble();
+			final double weight = rng.nextDouble();
 
 			// avoid cycle
 			// Find a path to -> from. If path exist, a cycle would be introduced by adding
@@ -222,45 +280,4 @@ public final class SimpleEvolver implements Evolver {
 
 //		Logger.logln("Options depleted when trying to add random Connection");
 	}
-
-
-	/**
-	 * Sorts the specified List and deliberately scrambles the sections with equal
-	 * elements without breaking the sort order.
-	 * @param toKeyFunction converts elements in original to keys for the Comparator
-	 */
-	private <T, K> List<T> scrambleSort(
-			final List<? extends T> original,
-			final Function<? super T, K> toKeyFunction,
-			final Comparator<? super K> comparator) {
-		// divide into buckets based on toKeyFunction
-		final SortedMap<K, List<T>> buckets = new TreeMap<>(comparator);
-		// for every element in original
-		for (final T element : original) {
-			// computing key
-			buckets.compute(toKeyFunction.apply(element), (key, bucket) -> {
-				// if bucket for key is null, make one
-				if (bucket == null) {
-					final List<T> newBucket = new ArrayList<>();
-					newBucket.add(element);
-					return newBucket;
-				}
-				// otherwise add to existing bucket
-				else {
-					bucket.add(element);
-					return bucket;
-				}
-			});
-		}
-
-		// scramble each bucket
-//		buckets.values().forEach(Collections::shuffle);
-		for (final var list : buckets.values())
-			Collections.shuffle(list);
-
-		// combine and return
-		return buckets.values().stream()
-				       .flatMap(List::stream)
-				       .collect(Collectors.toList());
-	}
 }
@@ -0,0 +1,104 @@
+package simulation;
+
+import logging.Logger;
+
+import java.awt.BasicStroke;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.util.SplittableRandom;
+
+/**
+ * Compares {@link Collision} against subtracting the Car shape from the Track shape, the
+ * way crashes used to be detected, on random Car poses around a Track. The shapes are
+ * built with java.awt.geom, which performs the same boolean operation as JavaFX's
+ * Shape.subtract without needing the JavaFX runtime.
+ * Usage: {@code CollisionBenchmark <track file> [poses] [rounds]}
+ */
+final class CollisionBenchmark {
+	private CollisionBenchmark() {}
+
+	public static void main(final String... args) {
+		if (args.length < 1) {
+			System.err.println("Usage: CollisionBenchmark <track file> [poses] [rounds]");
+			return;
+		}
+		final Track track = Track.load(args[0]);
+		final int numPoses = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000;
+		final int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		// poses anywhere in the bounding box of the Track, in simulation coordinates
+		final SplittableRandom random = new SplittableRandom(42);
+		final double[] xs = new double[numPoses], ys = new double[numPoses],
+				headings = new double[numPoses];
+		for (int i = 0; i < numPoses; i++) {
+			xs[i] = random.nextDouble(track.getMinX(), track.getMaxX() + Double.MIN_VALUE);
+			ys[i] = -random.nextDouble(track.getMinY(), track.getMaxY() + Double.MIN_VALUE);
+			headings[i] = random.nextDouble(2 * Math.PI);
+		}
+
+		final Collision collision = new Collision(track);
+		final Area trackArea = trackArea(track);
+
+		int crashes = 0, disagreements = 0;
+		for (int i = 0; i < numPoses; i++) {
+			final boolean analytic = collision.isCrashed(xs[i], ys[i], headings[i]);
+			final boolean subtracted = isCrashed(trackArea, xs[i], ys[i], headings[i]);
+			if (subtracted) crashes++;
+			if (analytic != subtracted) disagreements++;
+		}
+		Logger.logf("%d poses, %d crashed, %d disagreements%n", numPoses, crashes, disagreements);
+
+		for (int round = 0; round < rounds; round++) {
+			int count = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < numPoses; i++)
+				if (collision.isCrashed(xs[i], ys[i], headings[i])) count++;
+			final long analytic = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < numPoses; i++)
+				if (isCrashed(trackArea, xs[i], ys[i], headings[i])) count++;
+			final long subtracted = System.nanoTime() - start;
+
+			Logger.logf("round %d: analytic %.1f ns/test; subtract %.1f ns/test (%d)%n",
+					round, (double) analytic / numPoses, (double) subtracted / numPoses, count);
+		}
+	}
+
+
+	/** The filled and stroked shape of the Track, like its display shape. */
+	private static Area trackArea(final Track track) {
+		final double[] xs = track.getVertexXs(), ys = track.getVertexYs();
+		final Path2D.Double outline = new Path2D.Double();
+		for (int i = 0; i < xs.length; i++) {
+			if (i == 0) outline.moveTo(xs[i], ys[i]);
+			else outline.lineTo(xs[i], ys[i]);
+		}
+
+		// the fill is closed, the stroke is not
+		final Area area = new Area(outline);
+		area.add(new Area(new BasicStroke((float) Collision.STROKE_WIDTH,
+				BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 10)
+				                  .createStrokedShape(outline)));
+		return area;
+	}
+
+	private static boolean isCrashed(final Area trackArea,
+	                                 final double x, final double y, final double heading) {
+		final double cx = x, cy = -y;
+		final double cos = Math.cos(heading), sin = -Math.sin(heading);
+		final double lx = cos * CarFleet.LENGTH / 2, ly = sin * CarFleet.LENGTH / 2;
+		final double wx = -sin * CarFleet.WIDTH / 2, wy = cos * CarFleet.WIDTH / 2;
+
+		final Path2D.Double rectangle = new Path2D.Double();
+		rectangle.moveTo(cx + lx + wx, cy + ly + wy);
+		rectangle.lineTo(cx + lx - wx, cy + ly - wy);
+		rectangle.lineTo(cx - lx - wx, cy - ly - wy);
+		rectangle.lineTo(cx - lx + wx, cy - ly + wy);
+		rectangle.closePath();
+
+		final Area footprint = new Area(rectangle);
+		footprint.subtract(trackArea);
+		return !footprint.isEmpty();
+	}
+}
@@ -0,0 +1,88 @@
+package simulation;
+
+import logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Compares reading the range finders of many Cars into the shared buffer of
+ * {@link Sensors} against reading them one direction at a time into a List per Car, the
+ * way Drivers used to, on random Car poses around a Track.
+ * Usage: {@code SensorBenchmark <track file> [cars] [rounds]}
+ */
+final class SensorBenchmark {
+	private SensorBenchmark() {}
+
+	public static void main(final String... args) {
+		if (args.length < 1) {
+			System.err.println("Usage: SensorBenchmark <track file> [cars] [rounds]");
+			return;
+		}
+		final Track track = Track.load(args[0]);
+		final int numCars = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000;
+		final int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		// Cars anywhere in the bounding box of the Track
+		final SplittableRandom random = new SplittableRandom(42);
+		final CarFleet fleet = new CarFleet();
+		final List<Driver> drivers = new ArrayList<>(numCars);
+		for (int i = 0; i < numCars; i++) {
+			final int car = fleet.add(
+					random.nextDouble(track.getMinX(), track.getMaxX() + Double.MIN_VALUE),
+					random.nextDouble(track.getMinY(), track.getMaxY() + Double.MIN_VALUE));
+			fleet.setControls(car, CarFleet.TURN_LEFT | CarFleet.ACCELERATE);
+			// turn to a random heading
+			for (int turns = random.nextInt(360); turns > 0; turns--)
+				fleet.update(car);
+			drivers.add(new Driver(track, car, null));
+		}
+
+		final Sensors sensors = new Sensors(track);
+		double[] readings = sensors.sense(fleet, drivers);
+		double maxDifference = 0;
+		for (int i = 0; i < numCars; i++) {
+			final List<Double> list = readList(track, fleet, drivers.get(i).getCar());
+			for (int k = 0; k < Sensors.COUNT; k++) {
+				final double reading = readings[i * Sensors.COUNT + k];
+				if (reading != Double.MAX_VALUE || list.get(k) != Double.MAX_VALUE)
+					maxDifference = Math.max(maxDifference, Math.abs(reading - list.get(k)));
+			}
+		}
+		Logger.logf("%d cars, largest difference between readings: %g%n", numCars, maxDifference);
+
+		for (int round = 0; round < rounds; round++) {
+			double sum = 0;
+			long start = System.nanoTime();
+			readings = sensors.sense(fleet, drivers);
+			for (int i = 0; i < numCars * Sensors.COUNT; i++)
+				sum += hit(readings[i]);
+			final long batched = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (final Driver driver : drivers)
+				for (final double reading : readList(track, fleet, driver.getCar()))
+					sum += hit(reading);
+			final long listed = System.nanoTime() - start;
+
+			Logger.logf("round %d: batched %.1f ns/car; list %.1f ns/car (%g)%n",
+					round, (double) batched / numCars, (double) listed / numCars, sum);
+		}
+	}
+
+
+	/** The reading if the range finder hit an edge, 0 otherwise. */
+	private static double hit(final double reading) {
+		return (reading == Double.MAX_VALUE) ? 0 : reading;
+	}
+
+	/** The readings of the Car in a new List, computing the direction of every ray. */
+	private static List<Double> readList(final Track track, final CarFleet fleet, final int car) {
+		final List<Double> readings = new ArrayList<>();
+		for (final double direction : Sensors.DIRECTIONS)
+			readings.add(track.range(fleet.getX(car), -fleet.getY(car),
+					-(direction + fleet.getHeading(car))));
+		return readings;
+	}
+}
@@ -3,7 +3,8 @@ import service.Evolver;
 
 module carsim.simulation {
 
-	requires javafx.graphics;
+	// only needed to show simulations, see the "display" property
+	requires static javafx.graphics;
 	exports simulation to javafx.graphics;
 
 	requires carsim.network;
@@ -0,0 +1,146 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * The cars that run around in a Simulation, held in parallel arrays indexed by car
+ * number. The controls of each car are packed as bit flags:
+ * <pre>
+ * ACCELERATE:  car speed increasing;
+ * DECELERATE:  car speed decreasing at the same rate as accelerating;
+ * BRAKE:       car speed approaches 0 at a higher rate than acceleration;
+ * TURN_LEFT,
+ * TURN_RIGHT:  changes heading by a constant each update.
+ * </pre>
+ * A CarFleet belongs to the thread running its Simulation and is not thread safe;
+ * viewers read {@link Simulation.Snapshot}s instead.
+ */
+final class CarFleet {
+	// control flags
+	static final int
+			ACCELERATE  = 1,
+			DECELERATE  = 1 << 1,
+			BRAKE       = 1 << 2,
+			TURN_LEFT   = 1 << 3,
+			TURN_RIGHT  = 1 << 4;
+
+	/** The acceleration used when accelerating or decelerating. */
+	private static final double ACCELERATION = 0.1;
+
+	/** Amount of decrease in speed when braking. */
+	private static final double DECELERATION = 0.25;	//may be changed to be different from acceleration
+
+	/** In radians. */
+	private static final double TURN_AMOUNT = Math.PI / 180;
+
+	/** width and length of the rectangle representing a car */
+	static final int WIDTH = 40, LENGTH = 70;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+
+	private int size = 0;
+
+	private double[] xs = new double[INITIAL_CAPACITY], ys = new double[INITIAL_CAPACITY];
+	/** heading is in radians, increasing counter-clockwise, 0 facing right. */
+	private double[] speeds = new double[INITIAL_CAPACITY], headings = new double[INITIAL_CAPACITY];
+	/** Total distance traveled. */
+	private double[] odometers = new double[INITIAL_CAPACITY];
+	private byte[] controls = new byte[INITIAL_CAPACITY];
+
+
+	/**
+	 * Adds a car at the specified location, standing still, facing right.
+	 * @return  the number of the new car
+	 */
+	int add(final double x, final double y) {
+		if (size == xs.length)
+			grow();
+
+		final int car = size++;
+		xs[car] = x;            ys[car] = y;
+		speeds[car] = 0;        headings[car] = 0;
+		odometers[car] = 0;     controls[car] = 0;
+		return car;
+	}
+
+	private void grow() {
+		final int capacity = xs.length * 2;
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		speeds = Arrays.copyOf(speeds, capacity);
+		headings = Arrays.copyOf(headings, capacity);
+		odometers = Arrays.copyOf(odometers, capacity);
+		controls = Arrays.copyOf(controls, capacity);
+	}
+
+	/** Removes all cars. */
+	void clear() {
+		size = 0;
+	}
+
+	/** The number of cars, which are numbered from 0. */
+	int size() { return size; }
+
+
+	/**
+	 * Updates the states of the car, such as speed, heading, and location.
+	 */
+	void update(final int car) {
+		final int controls = this.controls[car];
+		double speed = speeds[car], heading = headings[car];
+
+		// no speed, no turning
+		if (speed != 0) {
+			if ((controls & TURN_LEFT) != 0)
+				heading += TURN_AMOUNT;
+			if ((controls & TURN_RIGHT) != 0)
+				heading -= TURN_AMOUNT;
+		}
+
+		if ((controls & ACCELERATE) != 0)
+			speed += ACCELERATION;
+		if ((controls & DECELERATE) != 0)
+			speed -= ACCELERATION;
+		if ((controls & BRAKE) != 0) {
+			if (speed > DECELERATION)
+				speed -= DECELERATION;
+			else if (speed < -DECELERATION)
+				speed += DECELERATION;
+			else
+				speed = 0;
+		}
+
+		// new location based on speed
+		xs[car] += speed * Math.cos(heading);
+		ys[car] += speed * Math.sin(heading);
+		odometers[car] += speed;
+
+		speeds[car] = speed;
+		headings[car] = heading;
+	}
+
+	/**
+	 * An upper bound of the absolute value of the odometer of the car after the specified
+	 * number of further updates, assuming it accelerates all the way.
+	 */
+	double maxDistance(final int car, final long updates) {
+		final double n = Math.max(updates, 0);
+		return Math.abs(odometers[car]) + n * Math.abs(speeds[car]) + ACCELERATION * n * (n + 1) / 2;
+	}
+
+
+	/** The control flags of the car. */
+	int getControls(final int car) { return controls[car]; }
+	/** Sets the control flags of the car. */
+	void setControls(final int car, final int controls) {
+		this.controls[car] = (byte) controls;
+	}
+
+	double getX(final int car) { return xs[car]; }
+	double getY(final int car) { return ys[car]; }
+
+	double getSpeed(final int car) { return speeds[car]; }
+	double getHeading(final int car) { return headings[car]; }
+	double getDistance(final int car) { return odometers[car]; }
+}
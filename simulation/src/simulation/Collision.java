@@ -0,0 +1,170 @@
+package simulation;
+
+/**
+ * Decides whether a Car has left its Track.
+ * The drivable area is the area enclosed by the Track, plus a band of half the stroke
+ * width around its edges, the same as the filled and stroked display shape of the Track.
+ * Cars are placed in display coordinates, at (x, -y), like the viewer draws them.
+ *
+ * A Car has crashed if its center is outside the Track, or if an edge of the Track cuts
+ * through the rectangle of the Car, reaching further than the tolerance of half the
+ * stroke width into it on both sides. The edges near the Car are found with the
+ * SegmentGrid of the Track and tested against the rectangle with the separating axis
+ * theorem; the center is located by counting the edges crossed by a ray along its grid
+ * row. Nothing is allocated.
+ * Instances are immutable and may be shared between threads.
+ */
+final class Collision {
+	/** Width of the stroke of the Track edges, half of which extends past the edges. */
+	static final double STROKE_WIDTH = 5;
+
+	/** Depth to which an edge may reach into a Car, covered by its stroke. */
+	private static final double TOLERANCE = STROKE_WIDTH / 2;
+	/** Half extents of the Car rectangle. */
+	private static final double HALF_LENGTH = CarFleet.LENGTH / 2d, HALF_WIDTH = CarFleet.WIDTH / 2d;
+
+	private final double[] x1s, y1s, x2s, y2s;
+	private final SegmentGrid grid;
+	private final double minX, minY, maxX, maxY;
+
+	/**
+	 * The edge from the last vertex back to the first, which bounds the filled area
+	 * without being an edge of the Track. It has no length if the Track is closed.
+	 */
+	private final double closeX1, closeY1, closeX2, closeY2;
+
+	Collision(final Track track) {
+		x1s = track.getX1s();   y1s = track.getY1s();
+		x2s = track.getX2s();   y2s = track.getY2s();
+		grid = track.getGrid();
+		minX = track.getMinX(); minY = track.getMinY();
+		maxX = track.getMaxX(); maxY = track.getMaxY();
+
+		final double[] xs = track.getVertexXs(), ys = track.getVertexYs();
+		final int last = Math.max(xs.length - 1, 0);
+		closeX1 = (xs.length > 0) ? xs[last] : 0;   closeY1 = (ys.length > 0) ? ys[last] : 0;
+		closeX2 = (xs.length > 0) ? xs[0] : 0;      closeY2 = (ys.length > 0) ? ys[0] : 0;
+	}
+
+
+	/** Whether any part of the specified car of the CarFleet is outside the drivable area. */
+	boolean isCrashed(final CarFleet fleet, final int car) {
+		return isCrashed(fleet.getX(car), fleet.getY(car), fleet.getHeading(car));
+	}
+
+	/**
+	 * Whether any part of a Car at the specified location, in simulation coordinates,
+	 * with the specified heading is outside the drivable area.
+	 */
+	boolean isCrashed(final double x, final double y, final double heading) {
+		// display coordinates, where the heading is mirrored
+		final double cx = x, cy = -y;
+		final double cos = Math.cos(heading), sin = -Math.sin(heading);
+
+		if (!isInside(cx, cy))
+			return true;
+
+		if (cutsRectangle(closeX1, closeY1, closeX2, closeY2, cx, cy, cos, sin))
+			return true;
+
+		// extent of the rectangle along x and y
+		final double extentX = HALF_LENGTH * Math.abs(cos) + HALF_WIDTH * Math.abs(sin);
+		final double extentY = HALF_LENGTH * Math.abs(sin) + HALF_WIDTH * Math.abs(cos);
+
+		final SegmentGrid grid = this.grid;
+		final int cx1 = grid.cellX(cx - extentX), cx2 = grid.cellX(cx + extentX);
+		final int cy1 = grid.cellY(cy - extentY), cy2 = grid.cellY(cy + extentY);
+		for (int row = cy1; row <= cy2; row++) {
+			for (int col = cx1; col <= cx2; col++) {
+				final int cell = row * grid.cols + col;
+				// edges spanning several cells are tested once for each, which is harmless
+				for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++) {
+					final int i = grid.cellSegments[k];
+					if (cutsRectangle(x1s[i], y1s[i], x2s[i], y2s[i], cx, cy, cos, sin))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Whether the segment from (x1, y1) to (x2, y2) cuts through the rectangle of a Car
+	 * centered at (cx, cy) whose length lies along (cos, sin), all in display coordinates.
+	 * The axes of the rectangle and the normal of the segment are the only candidate
+	 * separating axes; along each, the segment has to reach past the tolerance.
+	 */
+	private static boolean cutsRectangle(
+			final double x1, final double y1, final double x2, final double y2,
+			final double cx, final double cy, final double cos, final double sin) {
+		// end points relative to the rectangle, along its length (u) and width (v)
+		final double dx1 = x1 - cx, dy1 = y1 - cy, dx2 = x2 - cx, dy2 = y2 - cy;
+		final double u1 = dx1 * cos + dy1 * sin, v1 = dy1 * cos - dx1 * sin;
+		final double u2 = dx2 * cos + dy2 * sin, v2 = dy2 * cos - dx2 * sin;
+
+		final double reachU = HALF_LENGTH - TOLERANCE, reachV = HALF_WIDTH - TOLERANCE;
+		if (Math.min(u1, u2) >= reachU || Math.max(u1, u2) <= -reachU)
+			return false;
+		if (Math.min(v1, v2) >= reachV || Math.max(v1, v2) <= -reachV)
+			return false;
+
+		// normal of the segment, the segment projects onto it as a single point
+		final double nu = v1 - v2, nv = u2 - u1;
+		final double reach = HALF_LENGTH * Math.abs(nu) + HALF_WIDTH * Math.abs(nv)
+				- TOLERANCE * Math.sqrt(nu * nu + nv * nv);
+		return Math.abs(u1 * nu + v1 * nv) < reach;
+	}
+
+
+	/**
+	 * Whether the specified point, in display coordinates, is inside the filled area of
+	 * the Track. Counts the edges crossed by a ray from the point to the nearer side of
+	 * the grid along its row.
+	 */
+	private boolean isInside(final double px, final double py) {
+		if (px < minX || px > maxX || py < minY || py > maxY)
+			return false;
+
+		final SegmentGrid grid = this.grid;
+		final int row = grid.cellY(py), start = grid.cellX(px);
+		final boolean right = start >= grid.cols / 2;
+		final int end = right ? grid.cols - 1 : 0, step = right ? 1 : -1;
+
+		boolean inside = crosses(closeX1, closeY1, closeX2, closeY2, px, py, right);
+		for (int col = start; ; col += step) {
+			final int cell = row * grid.cols + col;
+			for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++) {
+				final int i = grid.cellSegments[k];
+				// an edge spanning several cells counts only in the cell of the crossing
+				if (crosses(x1s[i], y1s[i], x2s[i], y2s[i], px, py, right) &&
+						    grid.cellX(crossingX(x1s[i], y1s[i], x2s[i], y2s[i], py)) == col)
+					inside = !inside;
+			}
+			if (col == end)
+				break;
+		}
+		return inside;
+	}
+
+	/**
+	 * Whether the segment crosses the horizontal ray from (px, py) towards positive x if
+	 * right is true, negative x otherwise.
+	 */
+	private static boolean crosses(
+			final double x1, final double y1, final double x2, final double y2,
+			final double px, final double py, final boolean right) {
+		// half open in y, so a ray through a vertex counts one of its two edges
+		if ((y1 > py) == (y2 > py))
+			return false;
+		final double x = crossingX(x1, y1, x2, y2, py);
+		return right ? x > px : x < px;
+	}
+
+	/** The x coordinate where the segment crosses the line at y, which it must span. */
+	private static double crossingX(
+			final double x1, final double y1, final double x2, final double y2,
+			final double y) {
+		return x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+	}
+}
@@ -1,11 +1,17 @@
 package simulation;
 
+import java.util.function.IntSupplier;
+
 /**
- * A dummy class for creating dummy debug objects.
+ * A dummy class for creating dummy debug objects. The Car is controlled manually.
  */
 final class DebugDriver extends Driver {
-	DebugDriver() {
-		super(null, null, null);
+	/** Supplies the control flags of the Car, see {@link CarFleet}. */
+	private final IntSupplier controls;
+
+	DebugDriver(final int car, final IntSupplier controls) {
+		super(null, car, null);
+		this.controls = controls;
 	}
 
 	// override methods to make them do nothing
@@ -14,7 +20,11 @@ final class DebugDriver extends Driver {
 	@Override double getDistance() { return 0; }
 	@Override long getOperations() { return 0; }
 	@Override double getEvaluation() { return 0; }
-	@Override void drive() {}
+
+	@Override
+	void drive(final CarFleet fleet, final double[] readings, final int offset) {
+		fleet.setControls(getCar(), controls.getAsInt());
+	}
 
 	@Override
 	public String toString() {
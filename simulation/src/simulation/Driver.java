@@ -3,7 +3,8 @@ package simulation;
 import logging.Logger;
 import network.Network;
 
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Represents a Driver of a Car in the World. In addition to a reference to a Network
@@ -12,7 +13,8 @@ import java.util.stream.Collectors;
  */
 class Driver implements Comparable<Driver> {
 	private final Track track;
-	private final Car car;
+	/** The number of the Car in the CarFleet of its Simulation. */
+	private final int car;
 	private final Network network;
 
 	/** number of operations the network used */
@@ -24,15 +26,18 @@ class Driver implements Comparable<Driver> {
 	/** Total distance traveled. */
 	private volatile double distance = 0;
 
+	/** False if the simulation of this Driver was abandoned by racing. */
+	private volatile boolean exact = true;
+
 	/** A cached result of {@link SimEvaluator#evaluateDriver} */
 	private volatile double eval = -1;
 
 
 	/**
-	 * Constructs a new Driver controlled by the specified Network driving the specified
-	 * Car in the specified Track.
+	 * Constructs a new Driver controlled by the specified Network driving the Car of the
+	 * specified number in the specified Track.
 	 */
-	Driver(final Track track, final Car car, final Network network) {
+	Driver(final Track track, final int car, final Network network) {
 		this.track = track;
 		this.car = car;
 		this.network = network;
@@ -50,12 +55,17 @@ class Driver implements Comparable<Driver> {
 		this.distance = distance;
 	}
 
+	void setExact(final boolean exact) {
+		this.exact = exact;
+	}
+
 	Track getTrack() { return track; }
 	Network getNetwork() { return network; }
-	Car getCar() { return car; }
+	int getCar() { return car; }
 //	double getCompletion() { return completion; }
 	double getDistance() { return distance; }
 	long getOperations() { return operations; }
+	boolean isExact() { return exact; }
 
 	synchronized double getEvaluation() {
 		if (eval < 0)
@@ -74,26 +84,41 @@ class Driver implements Comparable<Driver> {
 	Interface for Network to control Car.
 	******************************************/
 
-	void drive() {
+	/** The control flag set by each Network output, in order. */
+	private static final int[] OUTPUT_CONTROLS = {
+			CarFleet.ACCELERATE, CarFleet.DECELERATE, CarFleet.BRAKE,
+			CarFleet.TURN_LEFT, CarFleet.TURN_RIGHT
+	};
+
+	/** Network inputs, the inverses of the range finder readings, refilled every tick. */
+	private final Double[] inputValues = new Double[Sensors.COUNT];
+	private final List<Double> inputs = Arrays.asList(inputValues);
+
+	/**
+	 * Lets the Network control the Car.
+	 * @param fleet     the CarFleet holding the Car
+	 * @param readings  the buffer holding the range finder readings of the Car
+	 * @param offset    the index of the first reading of the Car in the buffer
+	 * @see Sensors
+	 */
+	void drive(final CarFleet fleet, final double[] readings, final int offset) {
 		// mainly for debug compatibility
 		if (network == null) return;
 
 		// get readings
-		var inputs = car.getRangeReadingsAsList(track.getEdges()).stream()
-				             .map(n -> 1/n)
-				             .collect(Collectors.toList());
+		for (int k = 0; k < Sensors.COUNT; k++)
+			inputValues[k] = 1 / readings[offset + k];
 //		Logger.logln(inputs.toString());
 		// get response
 		final var outputs = network.compute(inputs);
 //		Logger.logln(outputs.toString());
 
 		// apply network's response to car
-		int i = 0, outputSize = outputs.size();
-		// set value to true if network output greater than 0, otherwise false
-		car.setIsAccelerating(  (i < outputSize) && (outputs.get(i++) > 0) );
-		car.setIsDecelerating(  (i < outputSize) && (outputs.get(i++) > 0) );
-		car.setIsBraking(       (i < outputSize) && (outputs.get(i++) > 0) );
-		car.setIsTurningLeft(   (i < outputSize) && (outputs.get(i++) > 0) );
-		car.setIsTurningRight(  (i < outputSize) && (outputs.get(i) > 0) );
+		// set the control if network output greater than 0
+		int controls = 0;
+		for (int i = 0; i < OUTPUT_CONTROLS.length && i < outputs.size(); i++)
+			if (outputs.get(i) > 0)
+				controls |= OUTPUT_CONTROLS[i];
+		fleet.setControls(car, controls);
 	}
 }
@@ -0,0 +1,211 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Watches the Cars of a Simulation for getting stuck or driving in loops. Neither ends
+ * in a crash, and either would keep a Simulation running until its tick limit, or forever
+ * without one.
+ *
+ * A Car is stuck if at the end of a window of ticks it is less than a car length away
+ * from where it was at the start of the window. For loops, the plane is divided into
+ * square cells a car length wide, centered so that the start at the origin is in the
+ * middle of a cell, and a visit is counted every time a Car enters a cell. A Car weaving
+ * along a cell boundary would enter the same cells again and again, so re-entering a
+ * cell only counts once the Car has left the 3 x 3 cells around it. A Car coming back to
+ * a cell after driving no more than maxLoop is circling, and one doing so more than
+ * maxVisits times is looping; a longer way back, such as a lap of a closed Track, starts
+ * the count over. The visits of all Cars are counted in one open addressing hash table
+ * keyed by Car and cell.
+ * Instances are not thread safe.
+ */
+final class Progress {
+	/** Verdicts of {@link #check(CarFleet, int, long)}. */
+	static final int NONE = 0, STUCK = 1, LOOPING = 2;
+
+	/** Width of the cells, and the distance a Car has to cover in a window. */
+	private static final double CELL_SIZE = CarFleet.LENGTH, MIN_PROGRESS = CarFleet.LENGTH;
+
+	/** Cell coordinates are packed into keys with the number of the Car. */
+	private static final int CELL_BITS = 20, CELL_MASK = (1 << CELL_BITS) - 1;
+	/** No key, as Car numbers stay far below 2^23. */
+	private static final long EMPTY = -1;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private final long window;
+	private final int maxVisits;
+	private final double maxLoop;
+
+	/**
+	 * @param window    number of ticks in which a Car has to cover MIN_PROGRESS
+	 * @param maxVisits number of times a Car may come back to a cell after circling
+	 * @param maxLoop   longest distance driven between two visits that is circling
+	 */
+	Progress(final long window, final int maxVisits, final double maxLoop) {
+		this.window = window;
+		this.maxVisits = maxVisits;
+		this.maxLoop = maxLoop;
+	}
+
+
+	// the location of each Car at the start of its window, and its current cell
+	private double[] anchorXs = new double[0], anchorYs = new double[0];
+	private long[] anchorTicks = new long[0];
+	private int[] cellXs = new int[0], cellYs = new int[0];
+
+	// the hash table of visits: their number, the distance driven at the last one, and
+	// whether the Car has left the cells around the cell since
+	private long[] keys = newKeys(INITIAL_CAPACITY);
+	private int[] visits = new int[INITIAL_CAPACITY];
+	private double[] odometers = new double[INITIAL_CAPACITY];
+	private boolean[] left = new boolean[INITIAL_CAPACITY];
+	private int used = 0;
+
+
+	/** Starts watching the car of the CarFleet from its current location at the tick. */
+	void watch(final CarFleet fleet, final int car, final long tick) {
+		if (car >= anchorTicks.length) {
+			final int capacity = Math.max(car + 1, anchorTicks.length * 2);
+			anchorXs = Arrays.copyOf(anchorXs, capacity);
+			anchorYs = Arrays.copyOf(anchorYs, capacity);
+			anchorTicks = Arrays.copyOf(anchorTicks, capacity);
+			cellXs = Arrays.copyOf(cellXs, capacity);
+			cellYs = Arrays.copyOf(cellYs, capacity);
+		}
+
+		final double x = fleet.getX(car), y = fleet.getY(car);
+		anchorXs[car] = x;      anchorYs[car] = y;
+		anchorTicks[car] = tick;
+		cellXs[car] = cell(x);  cellYs[car] = cell(y);
+		visit(car, cellXs[car], cellYs[car], fleet.getDistance(car));
+	}
+
+	/**
+	 * Checks the watched car of the CarFleet after the tick.
+	 * @return  STUCK or LOOPING if the car should be retired, NONE otherwise
+	 */
+	int check(final CarFleet fleet, final int car, final long tick) {
+		final double x = fleet.getX(car), y = fleet.getY(car);
+
+		final int cellX = cell(x), cellY = cell(y);
+		if (cellX != cellXs[car] || cellY != cellYs[car]) {
+			leave(car, cellXs[car], cellYs[car], cellX, cellY);
+			cellXs[car] = cellX;    cellYs[car] = cellY;
+			if (visit(car, cellX, cellY, fleet.getDistance(car)) > maxVisits)
+				return LOOPING;
+		}
+
+		if (tick - anchorTicks[car] >= window) {
+			final double dx = x - anchorXs[car], dy = y - anchorYs[car];
+			if (dx * dx + dy * dy < MIN_PROGRESS * MIN_PROGRESS)
+				return STUCK;
+
+			// next window
+			anchorXs[car] = x;      anchorYs[car] = y;
+			anchorTicks[car] = tick;
+		}
+		return NONE;
+	}
+
+	/** Forgets all Cars. */
+	void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(visits, 0);
+		Arrays.fill(odometers, 0);
+		Arrays.fill(left, false);
+		used = 0;
+	}
+
+
+	private static int cell(final double coordinate) {
+		return (int) Math.floor(coordinate / CELL_SIZE + 0.5) & CELL_MASK;
+	}
+
+	/** Whether the cells are at most one cell apart along both axes. */
+	private static boolean isAround(final int cellX, final int cellY,
+	                                final int otherX, final int otherY) {
+		return ((cellX - otherX + 1) & CELL_MASK) <= 2 && ((cellY - otherY + 1) & CELL_MASK) <= 2;
+	}
+
+	private static long key(final int car, final int cellX, final int cellY) {
+		return ((long) car << (2 * CELL_BITS)) | ((long) cellX << CELL_BITS) | cellY;
+	}
+
+	/**
+	 * Marks the cells around the cell the car moved from which are not around the cell it
+	 * moved to as left, so that entering them again is a new visit.
+	 */
+	private void leave(final int car, final int fromX, final int fromY,
+	                   final int toX, final int toY) {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				final int cellX = (fromX + dx) & CELL_MASK, cellY = (fromY + dy) & CELL_MASK;
+				if (isAround(cellX, cellY, toX, toY))
+					continue;
+				final int slot = find(keys, key(car, cellX, cellY));
+				if (keys[slot] != EMPTY)
+					left[slot] = true;
+			}
+		}
+	}
+
+	/**
+	 * Counts a visit of the car to the cell with the distance it has driven, unless it has
+	 * not left the cell since the last one.
+	 * @return  the number of visits of the car to the cell since it last came back after
+	 * driving more than maxLoop
+	 */
+	private int visit(final int car, final int cellX, final int cellY, final double distance) {
+		if (2 * (used + 1) > keys.length)
+			rehash(keys.length * 2);
+
+		final int slot = find(keys, key(car, cellX, cellY));
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key(car, cellX, cellY);
+			used++;
+		}
+		else if (!left[slot])
+			return visits[slot];
+		else if (distance - odometers[slot] > maxLoop)
+			visits[slot] = 0;
+
+		odometers[slot] = distance;
+		left[slot] = false;
+		return ++visits[slot];
+	}
+
+	/** The slot holding the key, or the empty slot where it belongs. */
+	private static int find(final long[] keys, final long key) {
+		final int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash(final int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldVisits = visits;
+		final double[] oldOdometers = odometers;
+		final boolean[] oldLeft = left;
+		keys = newKeys(capacity);
+		visits = new int[capacity];
+		odometers = new double[capacity];
+		left = new boolean[capacity];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) continue;
+			final int slot = find(keys, oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			visits[slot] = oldVisits[i];
+			odometers[slot] = oldOdometers[i];
+			left[slot] = oldLeft[i];
+		}
+	}
+
+	private static long[] newKeys(final int capacity) {
+		final long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		return keys;
+	}
+}
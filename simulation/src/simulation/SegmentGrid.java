@@ -0,0 +1,100 @@
+package simulation;
+
+/**
+ * A uniform grid over the segments of a Track. Each cell lists the segments whose
+ * bounding boxes overlap it, so geometric queries only need to look at the segments near
+ * the area of interest instead of every segment of the Track.
+ * The cell lists are stored in compressed form: the segments of cell {@code c} are
+ * {@code cellSegments[cellStart[c]]} up to but excluding
+ * {@code cellSegments[cellStart[c+1]]}, with cells numbered row by row.
+ */
+final class SegmentGrid {
+	/** Lower left corner of the grid. */
+	final double originX, originY;
+	/** Side length of a cell. */
+	final double cellSize;
+	/** Number of cells along x and y. */
+	final int cols, rows;
+
+	final int[] cellStart;
+	final int[] cellSegments;
+
+	SegmentGrid(final double originX, final double originY, final double cellSize,
+	            final int cols, final int rows,
+	            final int[] cellStart, final int[] cellSegments) {
+		this.originX = originX;     this.originY = originY;
+		this.cellSize = cellSize;
+		this.cols = cols;           this.rows = rows;
+		this.cellStart = cellStart;
+		this.cellSegments = cellSegments;
+	}
+
+
+	/**
+	 * Builds a grid over the specified segments. The cell size is chosen so that there
+	 * are about as many cells as segments.
+	 */
+	static SegmentGrid build(final double[] x1s, final double[] y1s,
+	                         final double[] x2s, final double[] y2s,
+	                         final double minX, final double minY,
+	                         final double maxX, final double maxY) {
+		final int count = x1s.length;
+		final double width = maxX - minX, height = maxY - minY;
+
+		// about one cell per segment, but don't let a flat track produce a degenerate grid
+		double cellSize = Math.sqrt(width * height / Math.max(count, 1));
+		cellSize = Math.max(cellSize, Math.max(width, height) / Math.max(count, 1));
+		if (!(cellSize > 0)) cellSize = 1;
+
+		final int cols = (int) (width / cellSize) + 1;
+		final int rows = (int) (height / cellSize) + 1;
+
+		final SegmentGrid grid = new SegmentGrid(
+				minX, minY, cellSize, cols, rows, new int[cols * rows + 1], null);
+
+		// first pass counts the segments in each cell, offset by one for the prefix sum
+		final int[] cellStart = grid.cellStart;
+		for (int i = 0; i < count; i++) {
+			final int cx1 = grid.cellX(Math.min(x1s[i], x2s[i]));
+			final int cx2 = grid.cellX(Math.max(x1s[i], x2s[i]));
+			final int cy1 = grid.cellY(Math.min(y1s[i], y2s[i]));
+			final int cy2 = grid.cellY(Math.max(y1s[i], y2s[i]));
+			for (int cy = cy1; cy <= cy2; cy++)
+				for (int cx = cx1; cx <= cx2; cx++)
+					cellStart[cy * cols + cx + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++)
+			cellStart[c + 1] += cellStart[c];
+
+		// second pass fills the cells
+		final int[] cellSegments = new int[cellStart[cols * rows]];
+		final int[] fill = new int[cols * rows];
+		for (int i = 0; i < count; i++) {
+			final int cx1 = grid.cellX(Math.min(x1s[i], x2s[i]));
+			final int cx2 = grid.cellX(Math.max(x1s[i], x2s[i]));
+			final int cy1 = grid.cellY(Math.min(y1s[i], y2s[i]));
+			final int cy2 = grid.cellY(Math.max(y1s[i], y2s[i]));
+			for (int cy = cy1; cy <= cy2; cy++) {
+				for (int cx = cx1; cx <= cx2; cx++) {
+					final int cell = cy * cols + cx;
+					cellSegments[cellStart[cell] + fill[cell]++] = i;
+				}
+			}
+		}
+
+		return new SegmentGrid(minX, minY, cellSize, cols, rows, cellStart, cellSegments);
+	}
+
+
+	/** The column containing x, clamped to the grid. */
+	int cellX(final double x) {
+		final int cx = (int) Math.floor((x - originX) / cellSize);
+		return Math.max(0, Math.min(cols - 1, cx));
+	}
+
+	/** The row containing y, clamped to the grid. */
+	int cellY(final double y) {
+		final int cy = (int) Math.floor((y - originY) / cellSize);
+		return Math.max(0, Math.min(rows - 1, cy));
+	}
+}
@@ -0,0 +1,108 @@
+package simulation;
+
+import java.util.Collection;
+
+/**
+ * The range finders of the Cars. Each Car has COUNT range finders pointing in fixed
+ * directions relative to its heading, each measuring the distance to the closest Track
+ * edge, see {@link Track#range(double, double, double, double)}.
+ * The readings of all Cars are written to one buffer, COUNT readings per Car in the order
+ * of {@link #DIRECTIONS}, which is reused from tick to tick. The trigonometry of a Car is
+ * computed once per tick; the directions of the range finders are rotated by it.
+ * Like {@link Collision}, the rays are cast in display coordinates, which are those of the
+ * Track: the Car is at (x, -y) and its heading is mirrored.
+ * Instances are not thread safe.
+ */
+final class Sensors {
+	/**
+	 * The angles in radians at which the sensors point relative to the direction of the
+	 * Car.
+	 */
+	private static final double
+			FRONT       = 0,
+			BACK        = Math.PI,
+			LEFT        = Math.PI / 2,
+			RIGHT       = -Math.PI / 2,
+			FRONT_LEFT  = Math.PI / 6,
+			FRONT_RIGHT = -Math.PI / 6,
+			LEFT_FRONT  = Math.PI / 3,
+			RIGHT_FRONT = -Math.PI / 3;
+	/** For easier enumeration, in the order of the readings. */
+	static final double[] DIRECTIONS = {
+			FRONT, BACK, LEFT, RIGHT, FRONT_LEFT, FRONT_RIGHT, LEFT_FRONT, RIGHT_FRONT
+	};
+	/** Number of range finders of a Car. */
+	static final int COUNT = DIRECTIONS.length;
+
+	private static final double[] COS = new double[COUNT], SIN = new double[COUNT];
+	static {
+		for (int k = 0; k < COUNT; k++) {
+			COS[k] = Math.cos(DIRECTIONS[k]);
+			SIN[k] = Math.sin(DIRECTIONS[k]);
+		}
+	}
+
+
+	private final Track track;
+	private double[] readings = new double[0];
+
+	Sensors(final Track track) {
+		this.track = track;
+	}
+
+
+	/**
+	 * Reads the range finders of the Cars of the specified Drivers, in iteration order.
+	 * @param fleet     the CarFleet holding the Cars
+	 * @return  the buffer holding the readings of the i-th Car at COUNT * i, valid until
+	 * the next invocation
+	 */
+	double[] sense(final CarFleet fleet, final Collection<? extends Driver> drivers) {
+		if (readings.length < drivers.size() * COUNT)
+			readings = new double[drivers.size() * COUNT];
+
+		int offset = 0;
+		for (final Driver driver : drivers) {
+			final int car = driver.getCar();
+			sense(track, fleet.getX(car), fleet.getY(car), fleet.getHeading(car), readings, offset);
+			offset += COUNT;
+		}
+		return readings;
+	}
+
+	/**
+	 * Reads the range finders of the Cars of the Drivers from index from (inclusive) to
+	 * to (exclusive).
+	 * @param fleet     the CarFleet holding the Cars
+	 * @return  the buffer holding the readings of the Car of drivers[from + i] at
+	 * COUNT * i, valid until the next invocation
+	 */
+	double[] sense(final CarFleet fleet, final Driver[] drivers, final int from, final int to) {
+		if (readings.length < (to - from) * COUNT)
+			readings = new double[(to - from) * COUNT];
+
+		for (int i = from; i < to; i++) {
+			final int car = drivers[i].getCar();
+			sense(track, fleet.getX(car), fleet.getY(car), fleet.getHeading(car),
+					readings, (i - from) * COUNT);
+		}
+		return readings;
+	}
+
+	/**
+	 * Reads the range finders of a Car at (x, y) in simulation coordinates with the
+	 * specified heading, writing the COUNT readings to the buffer from the specified offset.
+	 */
+	static void sense(final Track track,
+	                  final double x, final double y, final double heading,
+	                  final double[] readings, final int offset) {
+		final double cos = Math.cos(heading), sin = Math.sin(heading);
+		for (int k = 0; k < COUNT; k++) {
+			// heading plus the direction of the range finder
+			final double dx = cos * COS[k] - sin * SIN[k];
+			final double dy = sin * COS[k] + cos * SIN[k];
+			// in display coordinates, where y and the heading are mirrored
+			readings[offset + k] = track.range(x, -y, dx, -dy);
+		}
+	}
+}
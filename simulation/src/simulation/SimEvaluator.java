@@ -1,44 +1,172 @@
 package simulation;
 
+import logging.Logger;
 import network.Network;
-import service.Evaluator;
+import service.Evaluation;
+import service.EvaluationPublisher;
+import service.PopulationScores;
+import service.BudgetedEvaluator;
+import util.ConfigLoader;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
-public final class SimEvaluator implements Evaluator {
+/**
+ * Evaluates Networks by how far they drive around the Track named by the "track"
+ * property. Every evaluation runs in a Simulation of its own, taken from a pool of
+ * Simulations owned by this SimEvaluator, so evaluations may run concurrently, each on
+ * its own thread. A Simulation is only ever used by one evaluation at a time.
+ * The throughput of the Simulations and why their Cars were retired are logged every
+ * REPORT_INTERVAL, summed over all evaluations.
+ */
+public final class SimEvaluator implements BudgetedEvaluator {
 
-	/*
-	Evaluator must accommodate for life cycle of the javafx application, i.e.,
-	Application class (World) can only be initialized once, therefore simulation and
-	display of which must be implemented with one single run
+	/** The Track of all Simulations of this SimEvaluator, loaded on first use. */
+	private volatile Track track;
+
+	/** Simulations not used by any evaluation at the moment. */
+	private final Queue<Simulation> idleSimulations = new ConcurrentLinkedQueue<>();
+	/** Whether a Simulation of this SimEvaluator is on display. */
+	private boolean shown = false;
+
+
+	/** Minimum time between reports of the simulation statistics. */
+	private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+	// statistics of the simulation runs since the last report, guarded by this
+	private long lastReport = System.nanoTime();
+	private long runs = 0, carTicks = 0, stuck = 0, looping = 0, outOfTicks = 0;
+	/** Car-ticks saved by runs with a tick limit, negative if there were none. */
+	private long ticksSaved = -1;
+
+	/** Adds the statistics of a simulation run, reporting them if it is time to. */
+	private synchronized void record(final Simulation.RunStats stats) {
+		runs++;
+		carTicks += stats.carTicks;
+		stuck += stats.stuck;
+		looping += stats.looping;
+		outOfTicks += stats.outOfTicks;
+		if (stats.ticksSaved >= 0)
+			ticksSaved = Math.max(ticksSaved, 0) + stats.ticksSaved;
+
+		final long now = System.nanoTime();
+		if (now - lastReport < REPORT_INTERVAL)
+			return;
+
+		Logger.logf("simulations: %d runs; %.0f car-ticks per second; " +
+				            "retired: %d stuck, %d looping, %d out of ticks%s%n",
+				runs, carTicks / ((now - lastReport) / 1e9), stuck, looping, outOfTicks,
+				(ticksSaved < 0) ? "" : "; " + ticksSaved + " car-ticks saved");
+
+		lastReport = now;
+		runs = carTicks = stuck = looping = outOfTicks = 0;
+		ticksSaved = -1;
+	}
+
+
+	/** Fitness below which Cars are abandoned, if racing. */
+	private volatile double survivorCut = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Sets the cut below which Cars are abandoned. Racing only happens if enabled by the
+	 * "racing" property and the simulation length is bounded by a budget, as the best
+	 * possible score of a Car cannot be bounded otherwise.
 	 */
-	private static volatile boolean javaFxStarted = false;
+	@Override
+	public void setSurvivorCut(final double fitness) {
+		survivorCut = fitness;
+	}
+
 
 	/**
-	 * Evaluates the specified Network.
-	 * This method starts the JavaFX runtime the first time it is invoked across all
-	 * instances.
+	 * Takes an idle Simulation, set up for a run, creating one if there is none. The first
+	 * Simulation created is shown if the "display" property is true. The Simulation must
+	 * be handed back with {@link #endSimulation(Simulation)}.
+	 */
+	private Simulation startSimulation() {
+		Simulation simulation = idleSimulations.poll();
+		if (simulation == null) {
+			simulation = new Simulation(getTrack());
+
+			synchronized (this) {
+				if (!shown && Boolean.parseBoolean(
+						ConfigLoader.getConfig().getProperty("display", "false"))) {
+					World.show(simulation);
+					shown = true;
+				}
+			}
+		}
+
+		simulation.setSurvivorCut(survivorCut);
+		return simulation;
+	}
+
+	/** Resets the Simulation and returns it to the idle ones. */
+	private void endSimulation(final Simulation simulation) {
+		simulation.reset();
+		idleSimulations.add(simulation);
+	}
+
+	private Track getTrack() {
+		if (track == null) {
+			synchronized (this) {
+				if (track == null)
+					track = Track.load(ConfigLoader.getConfig().getProperty("track"));
+			}
+		}
+		return track;
+	}
+
+
+	/** Every evaluation has a Simulation of its own, they may run concurrently. */
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * Cars do not interact and each is retired by its own progress only, so a Network
+	 * gets the same score in any population, unless Cars are raced against the survivor
+	 * cut.
+	 */
+	@Override
+	public boolean isDeterministic() {
+		return !Boolean.parseBoolean(ConfigLoader.getConfig().getProperty("racing", "false"));
+	}
+
+	/**
+	 * The number of ticks a Car may be simulated for, as set by the "max_ticks" property,
+	 * or Long.MAX_VALUE if unlimited.
+	 */
+	@Override
+	public long getFullBudget() {
+		final long maxTicks =
+				Long.parseLong(ConfigLoader.getConfig().getProperty("max_ticks", "0"));
+		return (maxTicks > 0) ? maxTicks : Long.MAX_VALUE;
+	}
+
+
+	/**
+	 * Evaluates the specified Network, simulating at most the specified number of ticks.
 	 * @param network	evaluation target
+	 * @param budget    the maximum number of ticks to simulate
 	 * @return the fitness of the network
 	 */
 	@Override
-	public double evaluate(final Network network) {
-		if (!javaFxStarted) {
-			// initializes the World class, which would init JavaFX
-			World.main();
-			javaFxStarted = true;
-		}
-
-		World world = World.getWorld();
+	public double evaluate(final Network network, final long budget) {
+		final Simulation simulation = startSimulation();
 
-		world.addDriver(network);
+		simulation.addDriver(network);
 
 		// blocks until completion
-		world.runSimulation();
+		record(simulation.runSimulation(budget));
 
 		// cache and reset
-		final double eval = world.getDrivers().get(0).getEvaluation();
-		world.reset();
+		final double eval = simulation.getDrivers().get(0).getEvaluation();
+		endSimulation(simulation);
 
 		return eval;
 	}
@@ -46,38 +174,82 @@ public final class SimEvaluator implements Evaluator {
 
 	/**
 	 * Evaluates the specified Networks.
-	 * This method starts the JavaFX runtime the first time it is invoked across all
-	 * instances.
 	 * @param networks  the networks to be evaluated
-	 * @return  a sorted Map of Networks to scores
+	 * @return  the scores of the Networks
 	 */
 	@Override
-	public Map<Network, Double> evaluate(final Collection<? extends Network> networks) {
-		if (!javaFxStarted) {
-			// initializes the World class, which would init JavaFX
-			World.main();
-			javaFxStarted = true;
-		}
+	public PopulationScores evaluate(final Collection<? extends Network> networks) {
+		return evaluate(networks, getFullBudget());
+	}
 
-		World world = World.getWorld();
+	/**
+	 * Evaluates the specified Networks in a single simulation of at most the specified
+	 * number of ticks.
+	 * @param networks  the networks to be evaluated
+	 * @param budget    the maximum number of ticks to simulate
+	 * @param spent     receives the number of ticks simulated, summed over the Cars
+	 * @return  the scores of the Networks
+	 */
+	@Override
+	public PopulationScores evaluate(final Collection<? extends Network> networks,
+	                                 final long budget, final LongConsumer spent) {
+		final Simulation simulation = startSimulation();
 
-		world.addDrivers(networks);
+		simulation.addDrivers(networks);
 
 		// blocks until completion
-		world.runSimulation();
+		final Simulation.RunStats stats = simulation.runSimulation(budget);
+		record(stats);
+		spent.accept(stats.carTicks);
 
 		// get result
-		final List<Driver> drivers = world.getDrivers();
+		final List<Driver> drivers = simulation.getDrivers();
 
 		// reset simulation
-		world.reset();
-
-		// collect results and return
-		return drivers.stream()
-				       .map(driver -> Map.entry(driver.getNetwork(), driver.getEvaluation()))
-				       .collect(HashMap::new,
-						       (map, entry) -> map.put(entry.getKey(), entry.getValue()),
-						       HashMap::putAll);
+		endSimulation(simulation);
+
+		// collect results
+		final Network[] evaluated = new Network[drivers.size()];
+		final double[] fitness = new double[drivers.size()];
+		final BitSet inexact = new BitSet();
+		for (int i = 0; i < drivers.size(); i++) {
+			final Driver driver = drivers.get(i);
+			evaluated[i] = driver.getNetwork();
+			fitness[i] = driver.getEvaluation();
+			if (!driver.isExact())
+				inexact.set(i);
+		}
+		return new PopulationScores(evaluated, fitness, inexact);
+	}
+
+
+	/**
+	 * Evaluates the specified Networks in a single simulation, publishing the result for
+	 * each Network as soon as its Car crashes. Cars still running when the simulation
+	 * ends are published last.
+	 * @param networks  the networks to be evaluated
+	 * @return  a Publisher of the evaluation results
+	 */
+	@Override
+	public Flow.Publisher<Evaluation> evaluateAsync(final Collection<? extends Network> networks) {
+		final List<Network> population = new ArrayList<>(networks);
+
+		return new EvaluationPublisher(sink -> {
+			final Simulation simulation = startSimulation();
+
+			simulation.addDrivers(population);
+			simulation.setOnRetire(driver -> sink.accept(
+					new Evaluation(driver.getNetwork(), driver.getEvaluation(), driver.isExact())));
+
+			try {
+				// blocks until completion
+				record(simulation.runSimulation(getFullBudget()));
+			}
+			finally {
+				simulation.setOnRetire(driver -> {});
+				endSimulation(simulation);
+			}
+		});
 	}
 
 
@@ -94,6 +266,11 @@ public final class SimEvaluator implements Evaluator {
 		if (operations < 0)
 			throw new IllegalArgumentException("Uninitialized operations in Driver instance " + driver);
 
+		return evaluate(distance, operations);
+	}
+
+	/** The fitness of a Driver that traveled the distance using the operations. */
+	static double evaluate(final double distance, final double operations) {
 		return distance * distance - 0.5 * operations;
 	}
 }
@@ -0,0 +1,514 @@
+package simulation;
+
+import logging.Logger;
+import network.Network;
+import util.ConfigLoader;
+import util.IdentityHashSet;
+import util.WorkerPool;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * The simulation of Cars driven by Networks around a Track: car physics, range finders,
+ * collision with the Track edges and scoring. This needs no display; a {@link World} may
+ * observe a Simulation to show it.
+ * A Simulation runs on the thread invoking {@link #runSimulation(long)}. Other threads
+ * may follow it through the Snapshots it publishes while observed. Simulations share no
+ * mutable state, any number of them may run concurrently.
+ *
+ * Time in a Simulation is counted in ticks of fixed length, so the results do not
+ * depend on how fast it runs. By default it runs as fast as possible; in real time mode,
+ * set by the "real_time" property and on by default when the simulation is displayed,
+ * ticks are paced at TICK_MILLIS for human viewing.
+ *
+ * Within a tick Cars do not interact, so the sensing, driving and moving of the Cars is
+ * spread over the {@link WorkerPool} in chunks of TICK_CHUNK_SIZE Cars. Everything that
+ * depends on other Cars, such as retiring crashed Cars, is done between ticks on the
+ * simulation thread, so the results do not depend on the number of threads.
+ *
+ * A Car is simulated until it crashes, gets stuck or drives in loops, see
+ * {@link Progress}, or runs out of ticks; its Driver is retired and scored right away.
+ * The simulation ends as soon as no Car is left, so it always terminates, even without
+ * a tick limit.
+ */
+final class Simulation {
+
+	/** Length of a tick in real time mode. */
+	private static final long TICK_MILLIS = 10;
+
+	/** If true, ticks are paced at TICK_MILLIS instead of running as fast as possible. */
+	private final boolean realTime = Boolean.parseBoolean(ConfigLoader.getConfig().getProperty(
+			"real_time", ConfigLoader.getConfig().getProperty("display", "false")));
+
+	/** Watches the Cars for getting stuck or driving in loops. */
+	private final Progress progress = new Progress(
+			Long.parseLong(ConfigLoader.getConfig().getProperty("stuck_window", "500")),
+			Integer.parseInt(ConfigLoader.getConfig().getProperty("max_cell_visits", "3")),
+			CarFleet.LENGTH * Double.parseDouble(
+					ConfigLoader.getConfig().getProperty("max_loop_length", "20")));
+
+	/** If true, Cars are abandoned once they cannot beat the survivor cut in time. */
+	private final boolean racing =
+			Boolean.parseBoolean(ConfigLoader.getConfig().getProperty("racing", "false"));
+
+	/** Maximum number of updates in the current simulation. */
+	private volatile long maxTicks = Long.MAX_VALUE;
+
+	private volatile double survivorCut = Double.NEGATIVE_INFINITY;
+	/** Sets the fitness a Car must still be able to reach to be kept in the race. */
+	void setSurvivorCut(final double fitness) {
+		survivorCut = fitness;
+	}
+
+	/** Whether the Car can no longer reach the survivor cut, even driving flat out. */
+	private boolean cannotMakeCut(final int car) {
+		final long ops = opsCount.get();
+		final double bestPossible =
+				SimEvaluator.evaluate(fleet.maxDistance(car, maxTicks - ops), ops);
+		return bestPossible < survivorCut;
+	}
+
+
+	/** Controls the termination of the simulation thread. */
+	private volatile boolean done = false;
+	/** Ends the running simulation after the current tick. */
+	void stopSimulation() {
+		done = true;
+	}
+
+	// number of updates consumed in this simulation run
+	private final AtomicLong opsCount = new AtomicLong();
+
+
+	private final Track track;
+	private final Collision collision;
+
+	Simulation(final Track track) {
+		this.track = track;
+		collision = new Collision(track);
+	}
+
+	Track getTrack() { return track; }
+
+
+	/** The state of all Cars, including the ones no longer simulated. */
+	private final CarFleet fleet = new CarFleet();
+
+	/**
+	 * The Drivers whose Cars are still being simulated are the first activeCount. A
+	 * retired Driver is replaced by the last one, so the order changes as Cars retire.
+	 */
+	private Driver[] active = new Driver[64];
+	private int activeCount = 0;
+	/** Whether the debug Driver is among the active ones. */
+	private boolean debugActive = false;
+
+	private void addActive(final Driver driver) {
+		if (activeCount == active.length)
+			active = Arrays.copyOf(active, active.length * 2);
+		active[activeCount++] = driver;
+		if (driver == debugDriver)
+			debugActive = true;
+	}
+
+	/** Removes the active Driver at the index, moving the last one into its place. */
+	private void removeActive(final int index) {
+		if (active[index] == debugDriver)
+			debugActive = false;
+		active[index] = active[--activeCount];
+		active[activeCount] = null;
+	}
+
+	/** The Networks of the Drivers, to detect a Network driving several Cars. */
+	private final Set<Network> networks = new IdentityHashSet<>();
+	/**
+	 * True if a Network drives several Cars. Networks keep state while computing, so such
+	 * Simulations are not spread over threads.
+	 */
+	private boolean sharedNetworks = false;
+
+	/** The list is for external use via the getter. It does not have the debug Driver. */
+	private final List<Driver> drivers = new ArrayList<>();
+	List<Driver> getDrivers() { return new ArrayList<>(drivers); }
+	/**
+	 * Constructs a new Driver and Car for the specified Network and adds them to this
+	 * Simulation for evaluation.
+	 */
+	void addDriver(final Network network) {
+		final int car = fleet.add(0, 0);
+		final Driver driver = new Driver(track, car, network);
+
+		drivers.add(driver);
+		addActive(driver);
+		if (network != null && !networks.add(network))
+			sharedNetworks = true;
+	}
+	void addDrivers(final Collection<? extends Network> networks) {
+		networks.forEach(this::addDriver);
+	}
+
+
+	/** Supplies the controls of a manually controlled Car, or null if there is none. */
+	private volatile IntSupplier debugControls;
+	/** Drives the manually controlled Car of the current run, or null if there is none. */
+	private Driver debugDriver;
+	/**
+	 * Adds a manually controlled Car to every simulation run from now on. It is simulated
+	 * like the other Cars, but never evaluated.
+	 * @param controls  supplies the control flags of the Car every tick, see {@link CarFleet};
+	 *                  null for no manually controlled Car
+	 */
+	void setDebugControls(final IntSupplier controls) {
+		debugControls = controls;
+	}
+
+
+	/** Invoked with every Driver whose evaluation becomes final. */
+	private volatile Consumer<? super Driver> onRetire = driver -> {};
+	/**
+	 * Sets the callback invoked on the simulation thread with every Driver whose Car
+	 * crashed or was still running when the simulation ended. The evaluation of the
+	 * Driver is final by then.
+	 */
+	void setOnRetire(final Consumer<? super Driver> onRetire) {
+		this.onRetire = onRetire;
+	}
+
+	/** Records the final state of the Driver and passes it to the retire callback. */
+	private void retire(final Driver driver) {
+		driver.setDistance(fleet.getDistance(driver.getCar()));
+		driver.setOperations(opsCount.get());
+		if (driver != debugDriver)
+			onRetire.accept(driver);
+	}
+
+
+	/**
+	 * The Cars still being simulated at some tick, for viewers. Snapshots are immutable
+	 * and published separately from the CarFleet, which only the simulation thread uses.
+	 */
+	static final class Snapshot {
+		/** Number of the simulation run, counted from 0 since the Simulation was created. */
+		final long run;
+		/** Number of Cars. */
+		final int count;
+		/** The numbers of the Cars in the CarFleet, along with their location and heading. */
+		final int[] cars;
+		final double[] xs, ys, headings;
+		/** Index of the Car that traveled the furthest, -1 if there is none. */
+		final int leader;
+		/** Number of the manually controlled Car in the CarFleet, -1 if there is none. */
+		final int debugCar;
+
+		private Snapshot(final long run, final int count,
+		                 final int[] cars, final double[] xs, final double[] ys,
+		                 final double[] headings, final int leader, final int debugCar) {
+			this.run = run;
+			this.count = count;
+			this.cars = cars;
+			this.xs = xs;   this.ys = ys;
+			this.headings = headings;
+			this.leader = leader;
+			this.debugCar = debugCar;
+		}
+	}
+
+	/** Minimum time between Snapshots, about the frame time of a display. */
+	private static final long SNAPSHOT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(15);
+
+	/** Whether a viewer wants Snapshots. */
+	private volatile boolean observed = false;
+	private volatile Snapshot snapshot;
+	private long lastSnapshot;
+
+	/** Sets whether Snapshots are published for a viewer. */
+	void setObserved(final boolean observed) {
+		this.observed = observed;
+	}
+
+	/** The latest Snapshot, or null if none was published. */
+	Snapshot getSnapshot() { return snapshot; }
+
+	/**
+	 * Publishes a Snapshot of the active Cars. The leader is only of interest to viewers,
+	 * so it is found here while copying, rather than every tick.
+	 */
+	private void publishSnapshot() {
+		final int count = activeCount;
+		final int[] cars = new int[count];
+		final double[] xs = new double[count], ys = new double[count],
+				headings = new double[count];
+		int leader = -1;
+		for (int i = 0; i < count; i++) {
+			final int car = active[i].getCar();
+			if (leader < 0 || fleet.getDistance(cars[leader]) < fleet.getDistance(car))
+				leader = i;
+			cars[i] = car;
+			xs[i] = fleet.getX(car);
+			ys[i] = fleet.getY(car);
+			headings[i] = fleet.getHeading(car);
+		}
+		snapshot = new Snapshot(runs, count, cars, xs, ys, headings, leader,
+				(debugDriver == null) ? -1 : debugDriver.getCar());
+	}
+
+
+	/**
+	 * Number of Cars in a chunk of the work of a tick, the bits of a word of crashed, so
+	 * chunks write disjoint words.
+	 */
+	private static final int TICK_CHUNK_SIZE = Long.SIZE;
+
+	/**
+	 * Whether the Car of each active Driver crashed in the last tick, a bit set in words
+	 * of TICK_CHUNK_SIZE bits. Chunks write their words concurrently, which a BitSet does
+	 * not allow.
+	 */
+	private long[] crashed = new long[0];
+	/** Scratch space of each chunk: its range finder readings. */
+	private Sensors[] chunkSensors = new Sensors[0];
+
+	/** Makes room for the chunks of the active Drivers. */
+	private void ensureChunks() {
+		final int chunks = numChunks();
+		if (chunkSensors.length < chunks) {
+			final int old = chunkSensors.length;
+			chunkSensors = Arrays.copyOf(chunkSensors, chunks);
+			crashed = new long[chunks];
+			for (int chunk = old; chunk < chunks; chunk++)
+				chunkSensors[chunk] = new Sensors(track);
+		}
+	}
+
+	private int numChunks() {
+		return (activeCount + TICK_CHUNK_SIZE - 1) / TICK_CHUNK_SIZE;
+	}
+
+	private boolean isCrashed(final int index) {
+		return (crashed[index / TICK_CHUNK_SIZE] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Reads the range finders of the Cars in a chunk of the active Drivers, lets their
+	 * Networks drive and updates them, then checks them for crashes. Chunks only touch
+	 * their own Cars and scratch space, so they may run concurrently.
+	 */
+	private void tickChunk(final int chunk) {
+		final int from = chunk * TICK_CHUNK_SIZE;
+		final int to = Math.min(activeCount, from + TICK_CHUNK_SIZE);
+
+		final double[] readings = chunkSensors[chunk].sense(fleet, active, from, to);
+		long crashedCars = 0;
+		for (int i = from; i < to; i++) {
+			final int car = active[i].getCar();
+			active[i].drive(fleet, readings, (i - from) * Sensors.COUNT);
+			fleet.update(car);
+			if (collision.isCrashed(fleet, car))
+				crashedCars |= 1L << i;
+		}
+		crashed[chunk] = crashedCars;
+	}
+
+	/** Whether no Car is left to evaluate, the debug Car does not count. */
+	private boolean noneLeft() {
+		return activeCount == (debugActive ? 1 : 0);
+	}
+
+
+	/** What a simulation run did, for throughput statistics. */
+	static final class RunStats {
+		/** Number of Car updates, not counting the manually controlled Car. */
+		final long carTicks;
+		/** Duration of the run. */
+		final long nanos;
+		/** Number of Cars retired for getting stuck, looping, or reaching the tick limit. */
+		final int stuck, looping, outOfTicks;
+		/**
+		 * Number of Car updates the stuck and looping Cars would have used until the tick
+		 * limit, -1 if there is no limit.
+		 */
+		final long ticksSaved;
+
+		private RunStats(final long carTicks, final long nanos,
+		                 final int stuck, final int looping, final int outOfTicks,
+		                 final long ticksSaved) {
+			this.carTicks = carTicks;
+			this.nanos = nanos;
+			this.stuck = stuck;
+			this.looping = looping;
+			this.outOfTicks = outOfTicks;
+			this.ticksSaved = ticksSaved;
+		}
+	}
+
+
+	/** Number of runs started. */
+	private long runs = 0;
+
+	private volatile boolean simRan = false;
+	/**
+	 * Runs a simulation after the desired setup has been arranged.
+	 * @param maxTicks  the maximum number of updates to simulate for each Car,
+	 *                  Long.MAX_VALUE for no limit
+	 * @return  what the run did
+	 */
+	synchronized RunStats runSimulation(final long maxTicks) {
+		if (!simRan)
+			simRan = true;
+		else
+			throw new IllegalStateException("this simulation has run or is running");
+
+		this.maxTicks = maxTicks;
+		// the best possible score is unbounded without a limit
+		final boolean racing = this.racing && maxTicks != Long.MAX_VALUE;
+
+		final IntSupplier debugControls = this.debugControls;
+		if (debugControls != null) {
+			debugDriver = new DebugDriver(fleet.add(0, 0), debugControls);
+			addActive(debugDriver);
+		}
+
+		final long start = System.nanoTime();
+		// number of updates of evaluated cars, for throughput
+		long carTicks = 0;
+		// number of cars retired for getting stuck or looping, and the sum of their ticks
+		int stuck = 0, looping = 0;
+		long retiredEarlyTicks = 0;
+
+		// run sim
+		try {
+			// when the next tick is due in real time mode, ticks are not made up for delays
+			long nextTick = System.nanoTime();
+			// number of cars abandoned by racing
+			int raced = 0;
+
+			// check for collision with track edges before the first tick
+			// no more Cars are added, chunks only get fewer
+			ensureChunks();
+			Arrays.fill(crashed, 0);
+			for (int i = 0; i < activeCount; i++) {
+				final int car = active[i].getCar();
+				if (collision.isCrashed(fleet, car))
+					crashed[i / TICK_CHUNK_SIZE] |= 1L << i;
+				progress.watch(fleet, car, 0);
+			}
+
+			while (!done) {
+
+				if (realTime) {
+					nextTick += TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+					final long delay = nextTick - System.nanoTime();
+					if (delay > 0)
+						TimeUnit.NANOSECONDS.sleep(delay);
+					else
+						nextTick = System.nanoTime();
+				}
+
+				// retire the cars that crashed, got stuck or are looping in the last tick,
+				// backwards so the Driver replacing a removed one has been checked already
+				final long tick = opsCount.get();
+				for (int i = activeCount - 1; i >= 0; i--) {
+
+					final Driver driver = active[i];
+					final int car = driver.getCar();
+
+//					Logger.logf("%d: (%f. %f)%n", car, fleet.getX(car), fleet.getY(car));
+					if (isCrashed(i)) {
+						// drove out of the track
+						Logger.logf("CRASH: car %d at (%f. %f)%n", car, fleet.getX(car), fleet.getY(car));
+						removeActive(i);
+						retire(driver);
+					}
+					else if (racing && driver != debugDriver && cannotMakeCut(car)) {
+						// hopeless, stop simulating it
+						removeActive(i);
+						driver.setExact(false);
+						retire(driver);
+						raced++;
+					}
+					else if (driver != debugDriver) {
+						final int verdict = progress.check(fleet, car, tick);
+						if (verdict != Progress.NONE) {
+							removeActive(i);
+							retire(driver);
+							if (verdict == Progress.STUCK)
+								stuck++;
+							else
+								looping++;
+							retiredEarlyTicks += tick;
+						}
+					}
+				}
+
+				if (noneLeft())
+					break;
+
+				// read all range finders, let networks do their thing and update cars
+				final int chunks = numChunks();
+				if (sharedNetworks) {
+					for (int chunk = 0; chunk < chunks; chunk++)
+						tickChunk(chunk);
+				}
+				else
+					WorkerPool.forEachIndex(chunks, this::tickChunk);
+
+				carTicks += activeCount - (debugActive ? 1 : 0);
+
+				if (observed && System.nanoTime() - lastSnapshot >= SNAPSHOT_INTERVAL) {
+					publishSnapshot();
+					lastSnapshot = System.nanoTime();
+				}
+
+				opsCount.getAndIncrement();
+
+				if (opsCount.get() >= maxTicks)
+					done = true;
+			}
+
+			if (raced > 0)
+				Logger.logf("racing: %d of %d cars abandoned%n", raced, drivers.size());
+		}
+		catch (InterruptedException e) {
+			System.err.println("Simulation interrupted");
+			Thread.currentThread().interrupt();
+		}
+
+		// handle un-crashed cars
+		int outOfTicks = 0;
+		for (int i = 0; i < activeCount; i++) {
+			final Driver driver = active[i];
+			if (driver.getOperations() < 0) {
+				retire(driver);
+				if (driver != debugDriver)
+					outOfTicks++;
+			}
+		}
+
+		// without retiring them, stuck and looping cars would have run to the limit
+		final long ticksSaved = (maxTicks != Long.MAX_VALUE) ?
+				(stuck + looping) * maxTicks - retiredEarlyTicks : -1;
+		return new RunStats(carTicks, System.nanoTime() - start,
+				stuck, looping, outOfTicks, ticksSaved);
+	}
+
+	/** Resets the operation counter and remove all drivers. */
+	synchronized void reset() {
+		done = false;
+		opsCount.set(0);
+		drivers.clear();
+		Arrays.fill(active, 0, activeCount, null);
+		activeCount = 0;
+		debugActive = false;
+		networks.clear();
+		sharedNetworks = false;
+		fleet.clear();
+		progress.clear();
+		debugDriver = null;
+		runs++;
+		simRan = false;
+	}
+}
@@ -1,15 +1,10 @@
 package simulation;
 
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Polyline;
-
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 
 /**
@@ -49,13 +44,22 @@ final class Track {
 
 
 	/**
-	 * Loads track from the specified file.
+	 * Loads track from the specified file. A compiled copy of the track is cached next to
+	 * the file and is used instead of the text whenever the file is unchanged.
 	 * @param filename  path to the track file
 	 * @return  a new Track defined as in the specified file
+	 * @see TrackCompiler
 	 */
 	static Track load(final String filename) {
-		final Path path = Paths.get(filename);
+		return TrackCompiler.load(Paths.get(filename));
+	}
 
+	/**
+	 * Parses the text form of a track file, one "x y" vertex per line.
+	 * @param path  path to the track file
+	 * @return  a new Track defined as in the specified file
+	 */
+	static Track parse(final Path path) {
 		try {
 			// read file
 			final List<String> lines = Files.readAllLines(path);
@@ -89,73 +93,199 @@ final class Track {
 	}
 
 
-	private final List<Obstacle> edges = new ArrayList<>();
-	private final Polyline polyline = new Polyline();
-	Polyline asShape() { return polyline; }
+	/** Vertices of the track, in order. */
+	private final double[] xs, ys;
 
-	private Track(final List<Point> points) {
+	/** End points of the edges, edge i goes from (x1s[i], y1s[i]) to (x2s[i], y2s[i]). */
+	private final double[] x1s, y1s, x2s, y2s;
 
-		// setup polyline
-		final List<Double> trackPoints = polyline.getPoints();
-		points.forEach(point -> {
-			trackPoints.add(point.x);
-			trackPoints.add(point.y);
-		});
-		// Shape's subtract, union, and intersect methods require fill
-		polyline.setFill(Color.TRANSPARENT);
-		polyline.setStrokeWidth(5);
-
-		// set up edges
-		for (int i = 1; i < points.size(); i++) {
-			// connect all points into edges
-			final Point p1, p2;
-			p1 = points.get(i-1);
-			p2 = points.get(i);
-
-			edges.add(new Obstacle(p1.x, p1.y, p2.x, p2.y));
-		}
-	}
+	/** Bounding box of the whole track. */
+	private final double minX, minY, maxX, maxY;
 
+	private final SegmentGrid grid;
 
-	List<Obstacle> getEdges() { return edges; }
-}
+	/**
+	 * Constructs a Track from already computed geometry. Used when loading a compiled
+	 * track.
+	 */
+	Track(final double[] xs, final double[] ys,
+	      final double[] x1s, final double[] y1s,
+	      final double[] x2s, final double[] y2s,
+	      final double minX, final double minY,
+	      final double maxX, final double maxY,
+	      final SegmentGrid grid) {
+		this.xs = xs;   this.ys = ys;
+		this.x1s = x1s; this.y1s = y1s;
+		this.x2s = x2s; this.y2s = y2s;
+		this.minX = minX; this.minY = minY;
+		this.maxX = maxX; this.maxY = maxY;
+		this.grid = grid;
+	}
 
+	private Track(final List<Point> points) {
+		final int numVertices = points.size();
+		final int numEdges = Math.max(numVertices - 1, 0);
+
+		xs = new double[numVertices];
+		ys = new double[numVertices];
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numVertices; i++) {
+			final Point point = points.get(i);
+			xs[i] = point.x;    ys[i] = point.y;
+
+			minX = Math.min(minX, point.x);     minY = Math.min(minY, point.y);
+			maxX = Math.max(maxX, point.x);     maxY = Math.max(maxY, point.y);
+		}
+		// an empty track has an empty box at the origin
+		if (numVertices == 0)
+			minX = minY = maxX = maxY = 0;
+		this.minX = minX;   this.minY = minY;
+		this.maxX = maxX;   this.maxY = maxY;
+
+		// connect all points into edges
+		x1s = new double[numEdges];     y1s = new double[numEdges];
+		x2s = new double[numEdges];     y2s = new double[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			x1s[i] = xs[i];     y1s[i] = ys[i];
+			x2s[i] = xs[i+1];   y2s[i] = ys[i+1];
+		}
 
+		grid = SegmentGrid.build(x1s, y1s, x2s, y2s, minX, minY, maxX, maxY);
+	}
 
-/**
- * An Obstacle is a line that can block a range finder.
- * @see Car#getRangeReadingsAsList(Collection)
- */
-final class Obstacle {
-	private final double x1, y1, x2, y2;
 
 	/**
-	 * Constructs an Obstacle blocking a line from (x1, y1) to (x2, y2).
+	 * Finds the distance from (x, y) to the closest edge in the specified direction.
+	 * @param direction angle in radians between x axis and the direction to find range in
+	 * @return  distance to the closest edge, Double.MAX_VALUE if there is none
+	 * @see #range(double, double, double, double)
 	 */
-	Obstacle(final double x1, final double y1,
-	         final double x2, final double y2) {
-		this.x1 = x1;   this.y1 = y1;
-		this.x2 = x2;   this.y2 = y2;
+	double range(final double x, final double y, final double direction) {
+		return range(x, y, Math.cos(direction), Math.sin(direction));
 	}
 
-	double getX1() {
-		return x1;
-	}
+	/**
+	 * Finds the distance from (x, y) to the closest edge in the direction of the unit
+	 * vector (dx, dy). The ray is marched through the cells of the SegmentGrid, testing
+	 * only the edges listed in the cells it passes, and stops at the first cell whose far
+	 * side is beyond the closest hit so far. The cost depends on the distance to the edge
+	 * rather than on the number of edges.
+	 * @return  distance to the closest edge, Double.MAX_VALUE if there is none
+	 */
+	double range(final double x, final double y, final double dx, final double dy) {
+		final SegmentGrid grid = this.grid;
+		final double cellSize = grid.cellSize;
+		final double gridMinX = grid.originX, gridMaxX = gridMinX + grid.cols * cellSize;
+		final double gridMinY = grid.originY, gridMaxY = gridMinY + grid.rows * cellSize;
+
+		// clip the ray to the grid
+		double enter = 0, leave = Double.POSITIVE_INFINITY;
+		if (dx != 0) {
+			final double t1 = (gridMinX - x) / dx, t2 = (gridMaxX - x) / dx;
+			enter = Math.max(enter, Math.min(t1, t2));
+			leave = Math.min(leave, Math.max(t1, t2));
+		}
+		else if (x < gridMinX || x > gridMaxX)
+			return Double.MAX_VALUE;
+		if (dy != 0) {
+			final double t1 = (gridMinY - y) / dy, t2 = (gridMaxY - y) / dy;
+			enter = Math.max(enter, Math.min(t1, t2));
+			leave = Math.min(leave, Math.max(t1, t2));
+		}
+		else if (y < gridMinY || y > gridMaxY)
+			return Double.MAX_VALUE;
+		if (enter > leave)
+			return Double.MAX_VALUE;
+
+		int col = grid.cellX(x + enter * dx), row = grid.cellY(y + enter * dy);
+		final int stepX = (dx > 0) ? 1 : -1, stepY = (dy > 0) ? 1 : -1;
+		// distances along the ray to the next column and row boundaries, and between them
+		double nextX = (dx == 0) ? Double.POSITIVE_INFINITY :
+				(gridMinX + (col + ((dx > 0) ? 1 : 0)) * cellSize - x) / dx;
+		double nextY = (dy == 0) ? Double.POSITIVE_INFINITY :
+				(gridMinY + (row + ((dy > 0) ? 1 : 0)) * cellSize - y) / dy;
+		final double deltaX = (dx == 0) ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+		final double deltaY = (dy == 0) ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+
+		double range = Double.POSITIVE_INFINITY;
+		while (true) {
+			final int cell = row * grid.cols + col;
+			for (int k = grid.cellStart[cell]; k < grid.cellStart[cell + 1]; k++) {
+				final int i = grid.cellSegments[k];
+				final double t = hitDistance(x, y, dx, dy, x1s[i], y1s[i], x2s[i], y2s[i]);
+				if (t < range)
+					range = t;
+			}
 
-	double getY1() {
-		return y1;
-	}
+			// hits in later cells are further than this cell
+			if (range <= Math.min(nextX, nextY))
+				break;
 
-	double getX2() {
-		return x2;
-	}
+			if (nextX < nextY) {
+				col += stepX;
+				if (col < 0 || col >= grid.cols) break;
+				nextX += deltaX;
+			}
+			else {
+				row += stepY;
+				if (row < 0 || row >= grid.rows) break;
+				nextY += deltaY;
+			}
+		}
 
-	double getY2() {
-		return y2;
+		return (range == Double.POSITIVE_INFINITY) ? Double.MAX_VALUE : range;
 	}
 
-	@Override
-	public String toString() {
-		return "(" + x1 + ", " + y1 + ")->(" + x2 + ", " + y2 + ")";
+	/**
+	 * The distance along the ray from (x, y) in the direction of the unit vector (dx, dy)
+	 * to the segment from (x1, y1) to (x2, y2), or positive infinity if the ray misses it.
+	 * Solves (x, y) + t (dx, dy) = (x1, y1) + s (x2 - x1, y2 - y1); the ray hits if t is
+	 * not negative and s is within [0, 1].
+	 */
+	private static double hitDistance(final double x, final double y,
+	                                  final double dx, final double dy,
+	                                  final double x1, final double y1,
+	                                  final double x2, final double y2) {
+		final double ex = x2 - x1, ey = y2 - y1;
+		final double ax = x1 - x, ay = y1 - y;
+		final double denominator = dx * ey - dy * ex;
+		if (denominator == 0) {
+			// parallel, only a ray along the segment hits it, at its nearer end
+			if (ax * dy - ay * dx != 0)
+				return Double.POSITIVE_INFINITY;
+			final double t1 = ax * dx + ay * dy, t2 = (x2 - x) * dx + (y2 - y) * dy;
+			if (t1 < 0 && t2 < 0)
+				return Double.POSITIVE_INFINITY;
+			// starting on the segment
+			if (t1 < 0 || t2 < 0)
+				return 0;
+			return Math.min(t1, t2);
+		}
+
+		final double t = (ax * ey - ay * ex) / denominator;
+		final double s = (ax * dy - ay * dx) / denominator;
+		return (t >= 0 && s >= 0 && s <= 1) ? t : Double.POSITIVE_INFINITY;
 	}
+
+
+	//////////////////////////////
+	// raw geometry
+
+	int getNumVertices() { return xs.length; }
+	double[] getVertexXs() { return xs; }
+	double[] getVertexYs() { return ys; }
+
+	int getNumEdges() { return x1s.length; }
+	double[] getX1s() { return x1s; }
+	double[] getY1s() { return y1s; }
+	double[] getX2s() { return x2s; }
+	double[] getY2s() { return y2s; }
+
+	double getMinX() { return minX; }
+	double getMinY() { return minY; }
+	double getMaxX() { return maxX; }
+	double getMaxY() { return maxY; }
+
+	SegmentGrid getGrid() { return grid; }
 }
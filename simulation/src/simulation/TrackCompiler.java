@@ -0,0 +1,210 @@
+package simulation;
+
+import logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Compiles text track files into a binary form holding the edge arrays, bounding box and
+ * SegmentGrid of the Track. The compiled file is cached next to the source file and is
+ * memory mapped on later loads, as long as the source file has not changed since.
+ *
+ * Binary layout, all values big-endian:
+ * <pre>
+ * int     magic, version
+ * long    source size, source last modified time in milliseconds
+ * int     number of vertices (n)
+ * double  minX, minY, maxX, maxY
+ * double  xs[n], ys[n]
+ * double  x1s[n-1], y1s[n-1], x2s[n-1], y2s[n-1]
+ * double  grid originX, originY, cellSize
+ * int     grid cols, rows
+ * int     cellStart[cols*rows + 1], cellSegments[cellStart[cols*rows]]
+ * </pre>
+ */
+final class TrackCompiler {
+	/** Appended to the name of the source file to get the name of the compiled file. */
+	static final String EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x54524B43;	// "TRKC"
+	private static final int VERSION = 1;
+
+	private TrackCompiler() {}
+
+
+	/**
+	 * Loads the Track defined by the specified text file, using the compiled copy if it is
+	 * up to date and recompiling it otherwise.
+	 */
+	static Track load(final Path source) {
+		final Path compiled = compiledPath(source);
+
+		final long size, modified;
+		try {
+			size = Files.size(source);
+			modified = Files.getLastModifiedTime(source).toMillis();
+		}
+		catch (IOException e) {
+			Logger.logln("Failed to read track file '" + source.toAbsolutePath() + "': " + e);
+			throw new IllegalStateException("Failed to build Track", e);
+		}
+
+		if (Files.isRegularFile(compiled)) {
+			try {
+				final Track track = read(compiled, size, modified);
+				if (track != null)
+					return track;
+			}
+			catch (IOException | RuntimeException e) {
+				// a damaged cache is simply rebuilt
+				Logger.logln("Discarding unreadable compiled track '" + compiled + "': " + e);
+			}
+		}
+
+		final Track track = Track.parse(source);
+		try {
+			write(track, compiled, size, modified);
+		}
+		catch (IOException e) {
+			// not fatal, the track is just parsed again next time
+			Logger.logln("Failed to cache compiled track '" + compiled + "': " + e);
+		}
+		return track;
+	}
+
+
+	static Path compiledPath(final Path source) {
+		return source.resolveSibling(source.getFileName() + EXTENSION);
+	}
+
+
+	/**
+	 * Writes the compiled form of the specified Track. The file is written to a temporary
+	 * file first and then moved in place, so concurrent readers never see a partial file.
+	 * The temporary file is removed if either step fails.
+	 */
+	static void write(final Track track, final Path compiled,
+	                  final long sourceSize, final long sourceModified) throws IOException {
+		final Path directory = compiled.toAbsolutePath().getParent();
+		final Path temp = Files.createTempFile(directory, compiled.getFileName().toString(), ".tmp");
+
+		try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sourceSize);
+			out.writeLong(sourceModified);
+
+			out.writeInt(track.getNumVertices());
+			out.writeDouble(track.getMinX());
+			out.writeDouble(track.getMinY());
+			out.writeDouble(track.getMaxX());
+			out.writeDouble(track.getMaxY());
+
+			writeDoubles(out, track.getVertexXs());
+			writeDoubles(out, track.getVertexYs());
+
+			writeDoubles(out, track.getX1s());
+			writeDoubles(out, track.getY1s());
+			writeDoubles(out, track.getX2s());
+			writeDoubles(out, track.getY2s());
+
+			final SegmentGrid grid = track.getGrid();
+			out.writeDouble(grid.originX);
+			out.writeDouble(grid.originY);
+			out.writeDouble(grid.cellSize);
+			out.writeInt(grid.cols);
+			out.writeInt(grid.rows);
+			writeInts(out, grid.cellStart);
+			writeInts(out, grid.cellSegments);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		try {
+			Files.move(temp, compiled,
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// e.g. atomic moves are not supported, or the compiled file is locked
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	private static void writeDoubles(final DataOutputStream out, final double[] values)
+			throws IOException {
+		for (final double value : values)
+			out.writeDouble(value);
+	}
+
+	private static void writeInts(final DataOutputStream out, final int[] values)
+			throws IOException {
+		for (final int value : values)
+			out.writeInt(value);
+	}
+
+
+	/**
+	 * Reads a compiled Track by memory mapping the file.
+	 * @return  the Track, or null if the file was compiled from a different version of
+	 * the source file
+	 */
+	static Track read(final Path compiled, final long sourceSize, final long sourceModified)
+			throws IOException {
+		final MappedByteBuffer buffer;
+		try (var channel = FileChannel.open(compiled, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			return null;
+		if (buffer.getLong() != sourceSize || buffer.getLong() != sourceModified)
+			return null;
+
+		final int numVertices = buffer.getInt();
+		final int numEdges = Math.max(numVertices - 1, 0);
+		final double minX = buffer.getDouble(), minY = buffer.getDouble();
+		final double maxX = buffer.getDouble(), maxY = buffer.getDouble();
+
+		final double[] xs = readDoubles(buffer, numVertices);
+		final double[] ys = readDoubles(buffer, numVertices);
+
+		final double[] x1s = readDoubles(buffer, numEdges);
+		final double[] y1s = readDoubles(buffer, numEdges);
+		final double[] x2s = readDoubles(buffer, numEdges);
+		final double[] y2s = readDoubles(buffer, numEdges);
+
+		final double originX = buffer.getDouble(), originY = buffer.getDouble();
+		final double cellSize = buffer.getDouble();
+		final int cols = buffer.getInt(), rows = buffer.getInt();
+		final int[] cellStart = readInts(buffer, cols * rows + 1);
+		final int[] cellSegments = readInts(buffer, cellStart[cols * rows]);
+
+		final SegmentGrid grid =
+				new SegmentGrid(originX, originY, cellSize, cols, rows, cellStart, cellSegments);
+
+		return new Track(xs, ys, x1s, y1s, x2s, y2s, minX, minY, maxX, maxY, grid);
+	}
+
+	private static double[] readDoubles(final ByteBuffer buffer, final int count) {
+		final double[] values = new double[count];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + count * Double.BYTES);
+		return values;
+	}
+
+	private static int[] readInts(final ByteBuffer buffer, final int count) {
+		final int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + count * Integer.BYTES);
+		return values;
+	}
+}
@@ -6,32 +6,29 @@ import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Polyline;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.Shape;
 import javafx.stage.Stage;
 import javafx.util.Duration;
-import logging.Logger;
-import network.Network;
 import util.ConfigLoader;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Function;
 
 /**
- * The world where the car will be running around in.
+ * The world where the car will be running around in, as seen on the display. A World
+ * only observes a {@link Simulation}, which runs the same whether it is shown or not.
+ * There is at most one World, as the JavaFX runtime can only be started once; it shows
+ * one of any number of Simulations.
  */
 public final class World extends Application {
 
 
-	/** A manually controlled car for debug */
-	private final Car debugCar = new Car(0, 0, Color.rgb(0, 255, 0, 0.5));
-	/** A dummy object for debug, designed to do nothing. */
-	private final Driver debugDriver = new DebugDriver();
-	/** debug flag. if true, debugCar will be displayed. */
+	/** Control flags of a manually controlled car for debug, see {@link CarFleet}. */
+	private volatile int debugControls = 0;
+	/** debug flag. if true, a manually controlled car will be simulated and displayed. */
 	private volatile boolean debug =
 			Boolean.parseBoolean(ConfigLoader.getConfig().getProperty("debug"));
 
@@ -40,187 +37,66 @@ public final class World extends Application {
 	private static final int WIDTH = 1280, HEIGHT = 720;
 	private static final double CENTER_X = WIDTH/2d, CENTER_Y = HEIGHT/2d;
 
-	/** Terminates if no Car moves for IDLE_THRESHOLD milliseconds. */
-	private static final long IDLE_THRESHOLD = 5000;
 
-
-	/** Controls the termination of the simulation thread. */
-	private volatile boolean done = false;
-	/** Only true when terminate() method is used. Mark this World as irrecoverably terminated. */
-	private volatile boolean terminated = false;
-	/** Hard terminate, shuts down JavaFX runtime. */
+	/** Hard terminate, shuts down JavaFX runtime. Simulations carry on without display. */
 	private void terminate() {
-		done = true;
-		terminated = true;
+		simulation = null;
 		getGraphicsHandler().stop();
 		stage.close();
+		Platform.exit();
 	}
 
 
 	// singleton
 	private volatile static World instance;
-	static World getWorld() {
+	private static World getWorld() {
 		while (instance == null || !instance.isGraphicsReady)
 			Thread.onSpinWait();
 
 		return instance;
 	}
 
-	// number of updates consumed in this simulation run
-	private final AtomicLong opsCount = new AtomicLong();
-
-
-	private final Track TRACK = Track.load(ConfigLoader.getConfig().getProperty("track"));
-
+	private static boolean javaFxStarted = false;
 	/**
-	 * No conceptual significance, purely for implementation convenience.
-	 * Used to both display Car graphics and fetch controls from Drivers.
+	 * Shows the specified Simulation, starting the JavaFX runtime if needed. The display
+	 * follows the last Simulation shown.
 	 */
-	private final Map<Car, Driver> carToDrivers = new ConcurrentHashMap<>();
+	static synchronized void show(final Simulation simulation) {
+		if (!javaFxStarted) {
+			main();
+			javaFxStarted = true;
+		}
 
-	/** The list is for external use via the getter. It does not have the debug Driver. */
-	private final List<Driver> drivers = new ArrayList<>();
-	List<Driver> getDrivers() { return new ArrayList<>(drivers); }
-	/**
-	 * Constructs a new Driver and Car for the specified Network and adds them to this
-	 * World for evaluation and graphics.
-	 */
-	void addDriver(final Network network) {
-		final Car car = new Car();
-		final Driver driver = new Driver(TRACK, car, network);
-
-		drivers.add(driver);
-		carToDrivers.put(car, driver);
-		// add to display
-		Platform.runLater(() -> root.getChildren().add(car.asShape()));
-	}
-	void addDrivers(final Collection<? extends Network> networks) {
-		networks.forEach(this::addDriver);
+		getWorld().observe(simulation);
 	}
 
 
-	/** Updated simulation thread, used by graphics thread. */
-	private volatile Car leader;
-
-	private volatile boolean simRan = false;
-	/** Runs a simulation after the desired setup has been arranged. */
-	synchronized void runSimulation() {
-		if (!simRan)
-			simRan = true;
-		else
-			throw new IllegalStateException("this simulation has run or is running");
-
-		// start graphics
-		Platform.runLater(() -> getGraphicsHandler().play());
-
-		// run sim
-		try {
-			// for checking idle time and terminate if exceeding IDLE_THRESHOLD
-			long idleTimestamp = System.currentTimeMillis();
-
-			while (!done) {
-
-				Thread.sleep(10);
-
-				// for each car, true if car is fine, false if crashed
-				final Map<Car, Boolean> crashStatus = new ConcurrentHashMap<>();
-
-				Platform.runLater(() -> {
-					synchronized (graphicsLock) {
-						for (final var car : carToDrivers.keySet()) {
-							crashStatus.put(
-									car,
-									Shape.subtract(car.asShape(), TRACK.asShape())
-											.getBoundsInLocal().isEmpty()
-							);
-						}
-					}
-				});
-
-				// wait for the runLater to complete
-				while (crashStatus.size() != carToDrivers.size()) {
-					// Irrecoverable termination. caused by terminate()
-					if (terminated)
-						return;
-
-					if (done) {
-					/*
-					Manually terminated. This may happen as a result of terminate() or
-					stopSimulation(). Stop waiting and assume unchecked Cars to be not
-					crashed.
-					 */
-						carToDrivers.forEach((car, v) -> crashStatus.putIfAbsent(car, true));
-						break;
-					}
-
-					Thread.onSpinWait();
-				}
-
-
-				// check for collision with track edges
-				for (final var it = carToDrivers.entrySet().iterator(); it.hasNext(); ) {
-
-					final var entry = it.next();
-					final Car car = entry.getKey();
-					final Driver driver = entry.getValue();
-
-//					Logger.logf("%s: (%f. %f)%n", car, car.getX(), car.getY());
-					if (!crashStatus.get(car)) {
-						// drove out of the track
-						Logger.logf("CRASH: %s at (%f. %f)%n", car, car.getX(), car.getY());
-						driver.setDistance(driver.getCar().getDistance());
-						driver.setOperations(opsCount.get());
-
-						it.remove();
-					}
-				}
-
-				// let networks do their thing
-				carToDrivers.values().forEach(Driver::drive);
-
-				// update car position (no graphics here)
-				carToDrivers.keySet().forEach(Car::update);
-
-				leader = findBestBy(carToDrivers.keySet(), Car::getDistance);
-
-				opsCount.getAndIncrement();
-
-				// if any car is moving, reset timestamp
-				if (carToDrivers.keySet().stream().anyMatch(car -> car.getSpeed() != 0))
-					idleTimestamp = System.currentTimeMillis();
-				else
-					done = System.currentTimeMillis() - idleTimestamp >= IDLE_THRESHOLD;
-			}
+	/** The Simulation on display, or null if there is none. */
+	private volatile Simulation simulation;
 
-			// handle un-crashed cars
-			carToDrivers.forEach((k, driver) -> {
-				if (driver.getOperations() < 0)
-					driver.setOperations(opsCount.get());
-			});
-		}
-		catch (InterruptedException e) {
-			System.err.println("Simulation interrupted");
-			Thread.currentThread().interrupt();
-			terminate();
+	private void observe(final Simulation simulation) {
+		// the previous Simulation carries on without display
+		final Simulation previous = this.simulation;
+		if (previous != null && previous != simulation) {
+			previous.setObserved(false);
+			previous.setDebugControls(null);
 		}
-	}
 
-	/** Resets the operation counter and remove all drivers. */
-	synchronized void reset() {
-		if (terminated)
-			throw new IllegalStateException("World has been irrecoverably terminated");
-
-		done = false;
-		opsCount.set(0);
-		drivers.clear();
-		carToDrivers.clear();
-		// remove all Car displays
-		Platform.runLater(() -> root.getChildren().removeIf(e -> e instanceof Rectangle));
-		simRan = false;
+		if (debug)
+			simulation.setDebugControls(() -> debugControls);
+		simulation.setObserved(true);
+		this.simulation = simulation;
+
+		Platform.runLater(() -> {
+			root.getChildren().clear();
+			displays.clear();
+			run = -1;
+			root.getChildren().add(trackShape(simulation.getTrack()));
+			getGraphicsHandler().play();
+		});
 	}
 
 
-
 	/* ****************************************
 	Everything below is mostly display related.
 	******************************************/
@@ -239,8 +115,13 @@ public final class World extends Application {
 	private volatile boolean isGraphicsReady = false;
 
 
-	/** Force the read/write of graphics properties to be atomic. */
-	private final Object graphicsLock = new Object();
+	/**
+	 * The display of each Car on display by its number, only used on the JavaFX thread.
+	 * Cleared with every new simulation run.
+	 */
+	private final Map<Integer, Rectangle> displays = new HashMap<>();
+	/** The run of the Snapshot on display. */
+	private long run = -1;
 
 
 	/** Desired FPS for display. */
@@ -249,30 +130,84 @@ public final class World extends Application {
 	/** The content of the runnable is executed once every graphics update. */
 	private final Runnable graphicsLoop = () -> {
 		// TODO fix graphic jitters
-		synchronized (graphicsLock) {
-			carToDrivers.keySet().forEach(Car::updateGraphics);
+		final Simulation simulation = this.simulation;
+		if (simulation == null) return;
 
-			// graphics thread may get ahead
-			if (leader == null) return;
+		// simulation may not have started yet
+		final Simulation.Snapshot snapshot = simulation.getSnapshot();
+		if (snapshot == null) return;
 
-			root.setTranslateX(CENTER_X - leader.getX());
-			root.setTranslateY(CENTER_Y + leader.getY());
+		if (snapshot.run != run) {
+			displays.values().forEach(root.getChildren()::remove);
+			displays.clear();
+			run = snapshot.run;
 		}
+
+		// drop the Cars no longer simulated, show the new ones
+		final Set<Integer> cars = new HashSet<>();
+		for (int i = 0; i < snapshot.count; i++)
+			cars.add(snapshot.cars[i]);
+		displays.entrySet().removeIf(entry -> {
+			if (cars.contains(entry.getKey())) return false;
+			root.getChildren().remove(entry.getValue());
+			return true;
+		});
+		for (int i = 0; i < snapshot.count; i++) {
+			final int car = snapshot.cars[i];
+			final Rectangle display = displays.computeIfAbsent(
+					car, c -> createDisplay(c == snapshot.debugCar));
+			updateDisplay(snapshot.xs[i], snapshot.ys[i], snapshot.headings[i], display);
+		}
+
+		if (snapshot.leader < 0) return;
+
+		root.setTranslateX(CENTER_X - snapshot.xs[snapshot.leader]);
+		root.setTranslateY(CENTER_Y + snapshot.ys[snapshot.leader]);
 	};
 
 
-	@Override
-	public void init() throws Exception {
-		super.init();
+	private Rectangle createDisplay(final boolean debugCar) {
+		final Rectangle display = new Rectangle(CarFleet.WIDTH, CarFleet.LENGTH);
+		display.setStroke(Color.BLACK);
+		display.setFill(debugCar ? Color.rgb(0, 255, 0, 0.5) : Color.grayRgb(128, 0.5));
+		root.getChildren().add(display);
+		return display;
+	}
 
-		root.getChildren().add(TRACK.asShape());
+	/**
+	 * Updates the location of the display rectangle to reflect the specified location
+	 * and heading of a Car.
+	 */
+	private static void updateDisplay(final double x, final double y, final double heading,
+	                                  final Rectangle display) {
+		display.setX(x - CarFleet.WIDTH / 2d);
+		display.setY(-y - CarFleet.LENGTH / 2d);
+
+		// pi/2 offset because display has 0 facing up, car has 0 facing right.
+		// setRotate considers clockwise positive, thus the negation
+		display.setRotate(-Math.toDegrees( Math.PI/2 + heading ));
+	}
 
-		// debug
-		if (debug) {
-			carToDrivers.put(debugCar, debugDriver);
-			root.getChildren().add(debugCar.asShape());
+	/** The display shape of the specified Track. */
+	private static Polyline trackShape(final Track track) {
+		final double[] xs = track.getVertexXs(), ys = track.getVertexYs();
+		final double[] trackPoints = new double[xs.length * 2];
+		for (int i = 0; i < xs.length; i++) {
+			trackPoints[2*i] = xs[i];
+			trackPoints[2*i + 1] = ys[i];
 		}
 
+		final Polyline polyline = new Polyline(trackPoints);
+		polyline.setFill(Color.TRANSPARENT);
+		polyline.setStrokeWidth(Collision.STROKE_WIDTH);
+		return polyline;
+	}
+
+
+	@Override
+	public void init() throws Exception {
+		super.init();
+
 		// setup graphics loop
 		graphicsHandler = new Timeline(
 				new KeyFrame(
@@ -296,14 +231,13 @@ public final class World extends Application {
 		stage.setOnCloseRequest(event -> terminate());
 
 		stage.setScene(scene);
-		// DEBUG TODO uncomment
-//		stage.show();
+		stage.show();
 
 		isGraphicsReady = true;
     }
 
 
-	/** Debug and used by SimEvaluator to launch JavaFX. */
+	/** Debug and used to launch JavaFX. */
 	public static void main(String... args) {
 		final var thread = new Thread(() -> launch(args));
 		thread.setName("WorldGraphics");    // for debug
@@ -314,20 +248,8 @@ public final class World extends Application {
     private void setUpKeyHandlers(Scene scene) {
 		scene.setOnKeyPressed(event -> {
 			// manual control for debug
-			if (debug) {
-				switch (event.getCode()) {
-					case A: case LEFT:
-						debugCar.setIsTurningLeft(true); break;
-					case D: case RIGHT:
-						debugCar.setIsTurningRight(true); break;
-					case W: case UP:
-						debugCar.setIsAccelerating(true); break;
-					case S: case DOWN:
-						debugCar.setIsDecelerating(true); break;
-					case SPACE: case SHIFT:
-						debugCar.setIsBraking(true); break;
-				}
-			}
+			if (debug)
+				debugControls |= debugControl(event.getCode());
 
 			switch (event.getCode()) {
 				case ESCAPE: case Q:
@@ -338,42 +260,26 @@ public final class World extends Application {
 
 		scene.setOnKeyReleased(event -> {
 			// manual control for debug
-			if (debug) {
-				switch (event.getCode()) {
-					case A: case LEFT:
-						debugCar.setIsTurningLeft(false); break;
-					case D: case RIGHT:
-						debugCar.setIsTurningRight(false); break;
-					case W: case UP:
-						debugCar.setIsAccelerating(false); break;
-					case S: case DOWN:
-						debugCar.setIsDecelerating(false); break;
-					case SPACE: case SHIFT:
-						debugCar.setIsBraking(false); break;
-				}
-			}
+			if (debug)
+				debugControls &= ~debugControl(event.getCode());
 		});
 	}
 
-
-	/**
-	 * Searches through the given Collection for the best as specified by the keyExtractor.
-	 */
-	private static <T, K extends Comparable<K>> T findBestBy(
-			final Collection<? extends T> objects,
-			final Function<? super T, K> keyExtractor) {
-    	T best = null;
-    	K bestKey = null;
-
-    	for (final T obj : objects) {
-    		final K key = keyExtractor.apply(obj);
-    		if (best == null || bestKey == null ||
-				        bestKey.compareTo(key) < 0) {
-    			best = obj;
-    			bestKey = key;
-		    }
-	    }
-
-    	return best;
+	/** The control flag of the debug car bound to the key, 0 if there is none. */
+	private static int debugControl(final KeyCode code) {
+		switch (code) {
+			case A: case LEFT:
+				return CarFleet.TURN_LEFT;
+			case D: case RIGHT:
+				return CarFleet.TURN_RIGHT;
+			case W: case UP:
+				return CarFleet.ACCELERATE;
+			case S: case DOWN:
+				return CarFleet.DECELERATE;
+			case SPACE: case SHIFT:
+				return CarFleet.BRAKE;
+			default:
+				return 0;
+		}
 	}
 }
@@ -6,6 +6,12 @@ import service.Evaluator;
 import java.util.List;
 
 public final class XorTest implements Evaluator {
+	/** The score only depends on the structure of the network. */
+	@Override
+	public boolean isDeterministic() {
+		return true;
+	}
+
 	@Override
 	public double evaluate(Network network) {
 		double fitness = 0;